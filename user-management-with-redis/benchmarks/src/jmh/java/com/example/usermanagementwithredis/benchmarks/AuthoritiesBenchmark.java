@@ -0,0 +1,91 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.RoleRepository;
+import com.example.usermanagementwithredis.security.CachedPrincipal;
+import com.example.usermanagementwithredis.security.RoleAuthorization;
+import com.example.usermanagementwithredis.security.RoleMaskAuthentication;
+import com.example.usermanagementwithredis.security.VerifiedToken;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.security.access.expression.SecurityExpressionRoot;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Building the GrantedAuthority list of a principal: one new authority per role and request,
+ * as the authorization filter used to, against the shared instances held by the role catalog.
+ * Then one @PreAuthorize role check as hasAuthority answers it, collecting the authority names
+ * of a copied list, against the role mask bit test of RoleAuthorization.
+ * The catalog is loaded from in-memory stand-ins for the repository and the version key.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AuthoritiesBenchmark {
+
+    private RoleCatalog roleCatalog;
+    private RoleAuthorization roleAuthorization;
+    private User user;
+    private CachedPrincipal principal;
+    private VerifiedToken token;
+
+    @Setup
+    public void setup() {
+        List<Role> roles = List.of(new Role(4242L, Role.ADMINISTRATOR, 0), new Role(4343L, Role.GUEST, 1));
+        RoleRepository roleRepository = (RoleRepository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RoleRepository.class},
+                (proxy, method, args) -> "findAll".equals(method.getName()) ? roles : null);
+        ValueOperations<?, ?> versions = (ValueOperations<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ValueOperations.class},
+                (proxy, method, args) -> "get".equals(method.getName()) ? "1" : null);
+        StringRedisTemplate redisTemplate = new StringRedisTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ValueOperations<String, String> opsForValue() {
+                return (ValueOperations<String, String>) versions;
+            }
+        };
+        roleCatalog = new RoleCatalog(roleRepository, redisTemplate, "roles:catalog:version");
+        roleCatalog.refresh();
+
+        roleAuthorization = new RoleAuthorization(roleCatalog);
+
+        user = new User(1234567890L, "John", "Doe", "johndoe@gmail.com", "$2a$10$abcdefghijklmnopqrstuv", Set.copyOf(roles));
+        Long roleMask = roleCatalog.getMask(user.getRoles());
+        principal = new CachedPrincipal(user, roleCatalog.getAuthorities(roleMask), roleMask, System.currentTimeMillis());
+        token = new VerifiedToken(user.getId(), user.getEmail(), roleMask, null, 0, 0L, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<GrantedAuthority> authoritiesPerRequest() {
+        return user.getRoles().stream().map(role -> new SimpleGrantedAuthority(role.getName())).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<GrantedAuthority> authoritiesFromCatalog() {
+        return user.getRoles().stream().map(role -> roleCatalog.getAuthority(role.getName())).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public boolean hasAuthorityByName() {
+        Authentication authentication = new UsernamePasswordAuthenticationToken(user, token, principal.getAuthorities());
+        return new SecurityExpressionRoot(authentication) {}.hasAuthority(Role.ADMINISTRATOR);
+    }
+
+    @Benchmark
+    public boolean hasAuthorityByBit() {
+        Authentication authentication = new RoleMaskAuthentication(principal, token);
+        return roleAuthorization.isAdministrator(authentication);
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Compares the reflective ModelMapper setup the services used to rely on
+ * with the hand-written mappers in the dtos package.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    private ModelMapper modelMapper;
+    private UserMapper userMapper;
+    private RoleMapper roleMapper;
+
+    private User user;
+    private Role role;
+    private UserRequest userRequest;
+
+    @Setup
+    public void setup() {
+        modelMapper = new ModelMapper();
+        modelMapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
+        roleMapper = new RoleMapper();
+        userMapper = new UserMapper(roleMapper, new SimpleMeterRegistry());
+
+        role = new Role(4242L, Role.ADMINISTRATOR);
+        user = new User(1234567890L, "John", "Doe", "johndoe@gmail.com", "$2a$10$abcdefghijklmnopqrstuv", Set.of(role, new Role(4343L, Role.GUEST)));
+        userRequest = new UserRequest("John", "Doe", "johndoe@gmail.com", "qwerty", Set.of(new RoleRequest(4242L)));
+
+        checkSameOutput();
+    }
+
+    @Benchmark
+    public UserResponse userToResponseModelMapper() {
+        return modelMapper.map(user, UserResponse.class);
+    }
+
+    @Benchmark
+    public UserResponse userToResponseHandWritten() {
+        return userMapper.toResponse(user);
+    }
+
+    @Benchmark
+    public RoleResponse roleToResponseModelMapper() {
+        return modelMapper.map(role, RoleResponse.class);
+    }
+
+    @Benchmark
+    public RoleResponse roleToResponseHandWritten() {
+        return roleMapper.toResponse(role);
+    }
+
+    @Benchmark
+    public User requestToUserModelMapper() {
+        return modelMapper.map(userRequest, User.class);
+    }
+
+    @Benchmark
+    public User requestToUserHandWritten() {
+        return userMapper.toEntity(userRequest);
+    }
+
+    private void checkSameOutput() {
+        UserResponse expected = modelMapper.map(user, UserResponse.class);
+        UserResponse actual = userMapper.toResponse(user);
+        check(Objects.equals(expected.getId(), actual.getId())
+                && Objects.equals(expected.getFirstName(), actual.getFirstName())
+                && Objects.equals(expected.getLastName(), actual.getLastName())
+                && Objects.equals(expected.getEmail(), actual.getEmail())
+                && Objects.equals(roleKeys(expected.getRoles()), roleKeys(actual.getRoles())), "UserResponse");
+
+        User expectedUser = modelMapper.map(userRequest, User.class);
+        User actualUser = userMapper.toEntity(userRequest);
+        check(Objects.equals(expectedUser.getId(), actualUser.getId())
+                && Objects.equals(expectedUser.getFirstName(), actualUser.getFirstName())
+                && Objects.equals(expectedUser.getLastName(), actualUser.getLastName())
+                && Objects.equals(expectedUser.getEmail(), actualUser.getEmail())
+                && Objects.equals(expectedUser.getProtectedPassword(), actualUser.getProtectedPassword())
+                && Objects.equals(expectedUser.getRoles().stream().map(r -> r.getId() + ":" + r.getName()).collect(Collectors.toSet()),
+                                  actualUser.getRoles().stream().map(r -> r.getId() + ":" + r.getName()).collect(Collectors.toSet())), "User");
+    }
+
+    private static Set<String> roleKeys(Set<RoleResponse> roles) {
+        return roles.stream().map(r -> r.getId() + ":" + r.getName()).collect(Collectors.toSet());
+    }
+
+    private static void check(boolean same, String type) {
+        if(!same) {
+            throw new IllegalStateException("Hand-written mapper output differs from ModelMapper for " + type);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.UserManagementWithRedisApplication;
+import com.example.usermanagementwithredis.dtos.CurrentUserResponse;
+import com.example.usermanagementwithredis.dtos.LoginRequest;
+import com.example.usermanagementwithredis.dtos.LoginResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares Tomcat's default pool of 200 platform workers with a virtual thread per request when
+ * far more clients than workers are waiting. The application is started in the benchmark and every
+ * client calls the real GET /users/{id} handler, so a request verifies its token, reads the user's
+ * version and answers from the JSON cache, with the Redis round trips that takes. Throughput is in
+ * requests per millisecond, the sample mode reports the p99 latency. It runs against the Redis of
+ * scripts/docker-compose.yml, or the one given by SPRING_REDIS_HOST and SPRING_REDIS_PORT, and the
+ * virtual variant needs Java 21:
+ * ./gradlew :benchmarks:jmh -PvirtualThreads -PjmhIncludes=RequestExecutorBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Threads(1000)
+public class RequestExecutorBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest getUser;
+
+    @Setup
+    public void setup() throws Exception {
+        context = new SpringApplicationBuilder(UserManagementWithRedisApplication.class)
+                .properties("server.port=0",
+                        "server.tomcat.threads.max=" + TOMCAT_MAX_THREADS,
+                        "requests.virtual-threads=" + "virtual".equals(threads),
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn")
+                .run();
+        String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        // The root user the seeder creates reads its own profile
+        HttpRequest login = HttpRequest.newBuilder(URI.create(base + "/users/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(new LoginRequest("root@gmail.com", "root"))))
+                .build();
+        String authorization = "Bearer " + objectMapper.readValue(send(login), LoginResponse.class).getToken();
+        HttpRequest me = HttpRequest.newBuilder(URI.create(base + "/users/me")).header("Authorization", authorization).build();
+        Long id = objectMapper.readValue(send(me), CurrentUserResponse.class).getId();
+        getUser = HttpRequest.newBuilder(URI.create(base + "/users/" + id)).header("Authorization", authorization).build();
+        send(getUser);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] request() throws Exception {
+        return send(getUser);
+    }
+
+    // Anything but 200 would measure the error path instead
+    private byte[] send(HttpRequest request) throws Exception {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if(response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " answered " + response.statusCode());
+        }
+        return response.body();
+    }
+
+}
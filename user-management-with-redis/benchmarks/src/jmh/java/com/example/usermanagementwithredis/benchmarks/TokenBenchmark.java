@@ -0,0 +1,72 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.security.TokenIssuer;
+import com.example.usermanagementwithredis.security.TokenVerifier;
+import com.example.usermanagementwithredis.security.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The token work done on every login and every authenticated request: issuing a token,
+ * verifying one through the verifier cache, verifying one with the cache off, and the
+ * parser-per-request verification the authorization filter used to do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TokenBenchmark {
+
+    private static final String TOKEN_KEY = "123456";
+    private static final String SEPARATOR = "--";
+    private static final String AUTHORITIES_KEY = "authorities";
+
+    private TokenIssuer tokenIssuer;
+    private TokenVerifier cachedVerifier;
+    private TokenVerifier uncachedVerifier;
+
+    private User user;
+    private String token;
+
+    @Setup
+    public void setup() {
+        cachedVerifier = new TokenVerifier(TOKEN_KEY, SEPARATOR, AUTHORITIES_KEY, 10000, new SimpleMeterRegistry());
+        uncachedVerifier = new TokenVerifier(TOKEN_KEY, SEPARATOR, AUTHORITIES_KEY, 0, new SimpleMeterRegistry());
+        tokenIssuer = new TokenIssuer(cachedVerifier, SEPARATOR, AUTHORITIES_KEY, 10000000);
+
+        user = new User(1234567890L, "John", "Doe", "johndoe@gmail.com", "$2a$10$abcdefghijklmnopqrstuv", Set.of(new Role(4242L, Role.ADMINISTRATOR), new Role(4343L, Role.GUEST)));
+        token = tokenIssuer.issue(user, 0b11L, 0);
+
+        VerifiedToken verified = uncachedVerifier.verify(token);
+        if(verified == null || !user.getEmail().equals(verified.getEmail())) {
+            throw new IllegalStateException("Issued token does not verify");
+        }
+    }
+
+    @Benchmark
+    public String issue() {
+        return tokenIssuer.issue(user, 0b11L, 0);
+    }
+
+    @Benchmark
+    public VerifiedToken verifyCached() {
+        return cachedVerifier.verify(token);
+    }
+
+    @Benchmark
+    public VerifiedToken verifyUncached() {
+        return uncachedVerifier.verify(token);
+    }
+
+    @Benchmark
+    public Claims verifyParserPerRequest() {
+        return Jwts.parser().setSigningKey(TOKEN_KEY).parseClaimsJws(token).getBody();
+    }
+
+}
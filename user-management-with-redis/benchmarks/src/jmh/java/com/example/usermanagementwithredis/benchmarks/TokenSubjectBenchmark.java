@@ -0,0 +1,41 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.security.TokenSubject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Subject parsing with indexOf, as the verifier does now, against the String.split the
+ * authorization filter used, which compiles a regex for the two-character separator.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TokenSubjectBenchmark {
+
+    private static final String SEPARATOR = "--";
+
+    private String subject;
+
+    @Setup
+    public void setup() {
+        subject = TokenSubject.format(1234567890L, "johndoe@gmail.com", SEPARATOR);
+    }
+
+    @Benchmark
+    public TokenSubject parseIndexOf() {
+        return TokenSubject.parse(subject, SEPARATOR);
+    }
+
+    @Benchmark
+    public TokenSubject parseSplit() {
+        String[] subjectData = subject.split(SEPARATOR);
+        TokenSubject tokenSubject = null;
+        if(subjectData.length == 2) {
+            tokenSubject = new TokenSubject(Long.parseLong(subjectData[0]), subjectData[1]);
+        }
+        return tokenSubject;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.UserRedisConverter;
+import com.example.usermanagementwithredis.repositories.UserStorageConverters;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.convert.*;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Writing a user to its hash fields and reading it back. reflective is the plain mapping converter,
+ * following role references in Redis (served from memory here), fields is the same layout read by
+ * UserStorageConverters and binary is the compact layout. Redis memory per user for each layout is
+ * measured against a live Redis by ./gradlew :benchmarks:storageFootprint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class UserStorageBenchmark {
+
+    static final Role ADMINISTRATOR = new Role(4242L, Role.ADMINISTRATOR, 0);
+    static final Role GUEST = new Role(4343L, Role.GUEST, 1);
+    static final String PASSWORD_HASH = "$2a$10$UZwCmR0TsLI7XwzQzouVMu6K0BIQ2npCE5d2ACglU0j9ekJRW3.wW";
+
+    @Param({"reflective", "fields", "binary"})
+    private String layout;
+
+    private MappingRedisConverter converter;
+    private User user;
+    private Map<byte[], byte[]> stored;
+
+    @Setup
+    public void setup() {
+        converter = converter(layout);
+        user = new User(1234567890L, "John", "Doe", "johndoe@gmail.com", PASSWORD_HASH, Set.of(ADMINISTRATOR, GUEST));
+        stored = write().getBucket().rawMap();
+        checkRoundTrip();
+    }
+
+    @Benchmark
+    public RedisData write() {
+        RedisData data = new RedisData();
+        converter.write(user, data);
+        return data;
+    }
+
+    @Benchmark
+    public User read() {
+        RedisData data = new RedisData(Bucket.newBucketFromRawMap(stored));
+        data.setId("1234567890");
+        data.setKeyspace(User.KEYSPACE);
+        return converter.read(User.class, data);
+    }
+
+    // Converter set up the way RedisConfig does it for the given layout
+    static MappingRedisConverter converter(String layout) {
+        RedisMappingContext mappingContext = new RedisMappingContext();
+        ReferenceResolver roleHashes = (id, keyspace) -> roleHash(Objects.equals(id, String.valueOf(ADMINISTRATOR.getId())) ? ADMINISTRATOR : GUEST);
+        MappingRedisConverter converter;
+        if("reflective".equals(layout)) {
+            converter = new MappingRedisConverter(mappingContext, null, roleHashes);
+        } else {
+            Map<Long, Role> roles = Map.of(ADMINISTRATOR.getId(), ADMINISTRATOR, GUEST.getId(), GUEST);
+            converter = new UserRedisConverter(mappingContext, roleHashes, new UserStorageConverters.UserReader(roles::get, UserStorageBenchmark::roles));
+            Object writer = UserStorageConverters.FORMAT_BINARY.equals(layout) ? new UserStorageConverters.BinaryUserWriter() : new UserStorageConverters.FieldsUserWriter();
+            converter.setCustomConversions(new RedisCustomConversions(List.of(writer)));
+        }
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private static Set<Role> roles(long mask) {
+        Set<Role> roles = new HashSet<>();
+        for(Role role : List.of(ADMINISTRATOR, GUEST)) {
+            if((mask & (1L << role.getBit())) != 0) {
+                roles.add(role);
+            }
+        }
+        return roles;
+    }
+
+    private static Map<byte[], byte[]> roleHash(Role role) {
+        Map<byte[], byte[]> hash = new HashMap<>();
+        hash.put(bytes("_class"), bytes(Role.class.getName()));
+        hash.put(bytes("id"), bytes(String.valueOf(role.getId())));
+        hash.put(bytes("name"), bytes(role.getName()));
+        hash.put(bytes("bit"), bytes(String.valueOf(role.getBit())));
+        return hash;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void checkRoundTrip() {
+        User copy = read();
+        boolean same = Objects.equals(user.getId(), copy.getId())
+                && Objects.equals(user.getFirstName(), copy.getFirstName())
+                && Objects.equals(user.getLastName(), copy.getLastName())
+                && Objects.equals(user.getEmail(), copy.getEmail())
+                && Objects.equals(user.getProtectedPassword(), copy.getProtectedPassword())
+                && copy.getRoles() != null && copy.getRoles().size() == user.getRoles().size()
+                && copy.getRoles().stream().allMatch(role -> role.getName() != null);
+        if(!same) {
+            throw new IllegalStateException("The " + layout + " layout does not read back the user it wrote: " + copy);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.example.usermanagementwithredis.benchmarks;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import redis.clients.jedis.Jedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Writes sample users in each storage layout under footprint:* keys and prints the bytes Redis
+ * reports per user with MEMORY USAGE, next to the size of the field names and values written.
+ * The keys are removed afterwards. Arguments are host, port, database and number of users:
+ * ./gradlew :benchmarks:storageFootprint --args='localhost 6379 0 10000'
+ */
+public class UserStorageFootprint {
+
+    private static final String[] LAYOUTS = {"fields", "binary"};
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+        int database = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        System.out.printf("%-8s %14s %18s %14s %12s%n", "layout", "fields/user", "payload B/user", "redis B/user", "encoding");
+        try(Jedis jedis = new Jedis(host, port)) {
+            jedis.select(database);
+            for(String layout : LAYOUTS) {
+                MappingRedisConverter converter = UserStorageBenchmark.converter(layout);
+                long fields = 0;
+                long payload = 0;
+                long memory = 0;
+                String encoding = null;
+                for(int i = 0; i < users; i++) {
+                    RedisData data = new RedisData();
+                    converter.write(sampleUser(i), data);
+                    Map<byte[], byte[]> hash = data.getBucket().rawMap();
+                    byte[] key = ("footprint:" + layout + ":" + i).getBytes(StandardCharsets.UTF_8);
+                    jedis.del(key);
+                    jedis.hset(key, hash);
+                    fields += hash.size();
+                    for(Map.Entry<byte[], byte[]> field : hash.entrySet()) {
+                        payload += field.getKey().length + field.getValue().length;
+                    }
+                    memory += jedis.memoryUsage(key);
+                    encoding = new String(jedis.objectEncoding(key), StandardCharsets.UTF_8);
+                    jedis.del(key);
+                }
+                System.out.printf("%-8s %14.1f %18.1f %14.1f %12s%n", layout, fields / (double) users, payload / (double) users, memory / (double) users, encoding);
+            }
+        }
+    }
+
+    private static User sampleUser(int i) {
+        Set<Role> roles = i % 10 == 0 ? Set.of(UserStorageBenchmark.ADMINISTRATOR, UserStorageBenchmark.GUEST) : Set.of(UserStorageBenchmark.GUEST);
+        return new User((long) i * 7919, "First" + i, "Last" + i, "user" + i + "@example.com", UserStorageBenchmark.PASSWORD_HASH, roles);
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/*
+ * The calls of the Postman collection. Every call is timed and recorded under its route
+ * template, so each endpoint gets its own latency distribution whatever the ids in the path.
+ */
+public class ApiClient {
+
+    public static final String LOGIN = "POST /users/login";
+    public static final String LIST_USERS = "GET /users?cursor";
+    public static final String GET_USER = "GET /users/{id}";
+    public static final String GET_ROLES = "GET /users/roles";
+    public static final String CREATE_USER = "POST /users";
+    public static final String IMPORT_USERS = "POST /users/batch";
+    public static final String EDIT_USER = "PUT /users/{id}";
+    public static final String DELETE_USER = "DELETE /users/{id}";
+    public static final String THROTTLED = "Login throttled, run the application under test with security.login-throttle.enabled=false";
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final Duration timeout;
+    private final EndpointStats stats;
+
+    public ApiClient(String baseUrl, Duration timeout, EndpointStats stats) {
+        // The client keeps its own executor, the virtual user threads only block in send
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+        this.stats = stats;
+    }
+
+    public static class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+    }
+
+    // Returns the bearer token, or null when the credentials are rejected. A throttled login is an error,
+    // the measured logins would otherwise be cheap 429 answers instead of password checks
+    public String login(String email, String password) throws IOException, InterruptedException {
+        Response response = send(LOGIN, "POST", "/users/login", null, json(Map.of("email", email, "password", password)));
+        if(response.getStatus() == 429) {
+            throw new IllegalStateException(THROTTLED);
+        }
+        return response.isSuccessful() ? readJson(response).get("token").asText() : null;
+    }
+
+    public Response listUsers(String token, int size) throws IOException, InterruptedException {
+        return send(LIST_USERS, "GET", "/users?cursor=0&size=" + size, token, null);
+    }
+
+    public Response getUser(String token, long id) throws IOException, InterruptedException {
+        return send(GET_USER, "GET", "/users/" + id, token, null);
+    }
+
+    public Response getRoles() throws IOException, InterruptedException {
+        return send(GET_ROLES, "GET", "/users/roles", null, null);
+    }
+
+    public Response createUser(String firstName, String lastName, String email, String password) throws IOException, InterruptedException {
+        return send(CREATE_USER, "POST", "/users", null, json(Map.of("firstName", firstName, "lastName", lastName, "email", email, "password", password)));
+    }
+
+    public Response editUser(String token, long id, String firstName, String lastName, String email, String password) throws IOException, InterruptedException {
+        return send(EDIT_USER, "PUT", "/users/" + id, token, json(Map.of("firstName", firstName, "lastName", lastName, "email", email, "password", password)));
+    }
+
+    public Response deleteUser(String token, long id) throws IOException, InterruptedException {
+        return send(DELETE_USER, "DELETE", "/users/" + id, token, null);
+    }
+
+    public Response importUsers(String token, String ndjson) throws IOException, InterruptedException {
+        HttpRequest request = request("/users/batch", token)
+                .header("Content-Type", "application/x-ndjson")
+                .header("Accept", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .build();
+        return exchange(IMPORT_USERS, request);
+    }
+
+    public JsonNode readJson(Response response) throws IOException {
+        return readJson(response.getBody());
+    }
+
+    public JsonNode readJson(String json) throws IOException {
+        return objectMapper.readTree(json);
+    }
+
+    public String json(Object value) throws IOException {
+        return objectMapper.writeValueAsString(value);
+    }
+
+    private Response send(String endpoint, String method, String path, String token, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = request(path, token).header("Accept", "application/json");
+        if(body != null) {
+            builder.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        } else {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        return exchange(endpoint, builder.build());
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout);
+        if(token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    private Response exchange(String endpoint, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            stats.record(endpoint, System.nanoTime() - start, response.statusCode());
+            return new Response(response.statusCode(), response.body());
+        } catch (IOException ex) {
+            stats.recordFailure(endpoint);
+            throw ex;
+        }
+    }
+}
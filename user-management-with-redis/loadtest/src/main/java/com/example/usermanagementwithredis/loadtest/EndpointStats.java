@@ -0,0 +1,106 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Latency histograms and status counts per endpoint. Latencies are kept in microseconds with
+ * three significant digits, so every percentile is within 0.1% of the value actually measured.
+ * Throttled answers (429) are counted apart from the other non-2xx ones.
+ */
+public class EndpointStats {
+
+    private static final String[] COLUMNS = {"endpoint", "requests", "req/s", "non-2xx", "429", "failed", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms"};
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, long latencyNanos, int status) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint());
+        stats.latencies.recordValue(Math.max(1, latencyNanos / 1000));
+        if(status == 429) {
+            stats.throttled.increment();
+        } else if(status < 200 || status >= 300) {
+            stats.non2xx.increment();
+        }
+    }
+
+    public void recordFailure(String endpoint) {
+        endpoints.computeIfAbsent(endpoint, name -> new Endpoint()).failed.increment();
+    }
+
+    public long getThrottled() {
+        return endpoints.values().stream().mapToLong(stats -> stats.throttled.sum()).sum();
+    }
+
+    // Drops everything recorded so far, used when the warm-up ends
+    public void reset() {
+        endpoints.values().forEach(Endpoint::reset);
+    }
+
+    public void report(double seconds, PrintStream out, Path csv) throws IOException {
+        Map<String, String[]> rows = new TreeMap<>();
+        endpoints.forEach((name, stats) -> {
+            String[] row = stats.row(name, seconds);
+            // Endpoints only hit during the warm-up, such as the account import, are left out
+            if(!"0".equals(row[1]) || !"0".equals(row[5])) {
+                rows.put(name, row);
+            }
+        });
+
+        out.printf("%-24s %10s %10s %8s %8s %8s %10s %10s %10s %10s %10s%n", (Object[]) COLUMNS);
+        rows.values().forEach(row -> out.printf("%-24s %10s %10s %8s %8s %8s %10s %10s %10s %10s %10s%n", (Object[]) row));
+
+        if(csv != null) {
+            try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+                writer.println(String.join(",", COLUMNS));
+                rows.values().forEach(row -> writer.println(String.join(",", row)));
+            }
+        }
+    }
+
+    private static class Endpoint {
+        private final Recorder latencies = new Recorder(3);
+        private final LongAdder non2xx = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        private void reset() {
+            latencies.getIntervalHistogram();
+            non2xx.reset();
+            throttled.reset();
+            failed.reset();
+        }
+
+        private String[] row(String name, double seconds) {
+            Histogram total = latencies.getIntervalHistogram();
+            return new String[]{
+                    name,
+                    String.valueOf(total.getTotalCount()),
+                    String.format("%.1f", total.getTotalCount() / seconds),
+                    String.valueOf(non2xx.sum()),
+                    String.valueOf(throttled.sum()),
+                    String.valueOf(failed.sum()),
+                    millis(total.getValueAtPercentile(50)),
+                    millis(total.getValueAtPercentile(95)),
+                    millis(total.getValueAtPercentile(99)),
+                    millis(total.getValueAtPercentile(99.9)),
+                    millis(total.getMaxValue())
+            };
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.2f", micros / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Open-model load generator. Scenarios start at a fixed arrival rate whether or not the
+ * previous ones have finished, so a slow server builds up concurrency instead of quietly
+ * receiving less traffic. The virtual user cap bounds that concurrency, arrivals that find
+ * every virtual user busy are dropped and reported. Run it against the application backed by
+ * the Redis of scripts/docker-compose.yml, never against a shared environment, and with
+ * security.login-throttle.enabled=false: the run logs the same accounts in far more often than the
+ * throttle allows, so any 429 fails it.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        System.out.println("Load test with " + options);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(options.getMaxUsers(), runnable -> {
+            Thread thread = new Thread(runnable, "virtual-user-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        EndpointStats stats = new EndpointStats();
+        ApiClient client = new ApiClient(options.getBaseUrl(), options.getTimeout(), stats);
+        ScenarioMix mix = new ScenarioMix(options.getMix());
+
+        TestAccounts accounts = TestAccounts.prepare(client, options, workers);
+        System.out.println("Prepared " + accounts.size() + " test accounts");
+
+        Semaphore virtualUsers = new Semaphore(options.getMaxUsers());
+        LongAdder started = new LongAdder();
+        LongAdder dropped = new LongAdder();
+        LongAdder failed = new LongAdder();
+
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.getRate());
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+        boolean measuring = options.getWarmup().isZero();
+        for(long arrival = 0; ; arrival++) {
+            long scheduledAt = start + arrival * intervalNanos;
+            if(scheduledAt >= end) {
+                break;
+            }
+            long wait;
+            while((wait = scheduledAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if(!measuring && scheduledAt >= measureFrom) {
+                stats.reset();
+                started.reset();
+                dropped.reset();
+                failed.reset();
+                measuring = true;
+                System.out.println("Warm-up done, measuring for " + options.getDuration().toSeconds() + "s");
+            }
+            if(!virtualUsers.tryAcquire()) {
+                dropped.increment();
+                continue;
+            }
+            Scenario scenario = mix.next();
+            started.increment();
+            workers.execute(() -> {
+                try {
+                    scenario.run(client, accounts);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception ex) {
+                    failed.increment();
+                } finally {
+                    virtualUsers.release();
+                }
+            });
+        }
+
+        // Let the scenarios in flight finish so their requests are counted, but not forever
+        if(!virtualUsers.tryAcquire(options.getMaxUsers(), options.getTimeout().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+            System.out.println("Some scenarios were still running when the report was written");
+        }
+        double seconds = options.getDuration().toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+
+        System.out.println();
+        System.out.printf("Scenarios started %d (%.1f/s of %.1f/s requested), dropped at the virtual user cap %d, failed %d%n",
+                started.sum(), started.sum() / seconds, options.getRate(), dropped.sum(), failed.sum());
+        stats.report(seconds, System.out, options.getOutput() != null ? Path.of(options.getOutput()) : null);
+
+        accounts.delete(client);
+        workers.shutdownNow();
+        if(stats.getThrottled() > 0) {
+            System.out.println(stats.getThrottled() + " requests answered 429. " + ApiClient.THROTTLED);
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Command line options, all given as --name=value. Durations use the ISO-8601 units
+ * without the prefix, such as 30s, 2m or 1h.
+ */
+public class LoadTestOptions {
+
+    private String baseUrl = "http://localhost:9090";
+    // Scenario arrivals per second, kept regardless of how fast the server answers
+    private double rate = 50;
+    private Duration warmup = Duration.ofSeconds(10);
+    private Duration duration = Duration.ofSeconds(60);
+    // Virtual users: scenarios allowed in flight at once, arrivals beyond it are counted as dropped
+    private int maxUsers = 200;
+    // Accounts prepared before the run for the scenarios that act as an existing user
+    private int users = 50;
+    private String adminEmail = "root@gmail.com";
+    private String adminPassword = "root";
+    private String mix = "read-profile=45,login=20,user-lifecycle=15,list-users=10,roles=10";
+    private Duration timeout = Duration.ofSeconds(10);
+    private String output;
+
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for(String arg : args) {
+            int separatorIndex = arg.indexOf('=');
+            if(!arg.startsWith("--") || separatorIndex < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            values.put(arg.substring(2, separatorIndex), arg.substring(separatorIndex + 1));
+        }
+        LoadTestOptions options = new LoadTestOptions();
+        options.baseUrl = values.getOrDefault("base-url", options.baseUrl);
+        options.rate = Double.parseDouble(values.getOrDefault("rate", String.valueOf(options.rate)));
+        options.warmup = parseDuration(values.get("warmup"), options.warmup);
+        options.duration = parseDuration(values.get("duration"), options.duration);
+        options.maxUsers = Integer.parseInt(values.getOrDefault("max-users", String.valueOf(options.maxUsers)));
+        options.users = Integer.parseInt(values.getOrDefault("users", String.valueOf(options.users)));
+        options.adminEmail = values.getOrDefault("admin-email", options.adminEmail);
+        options.adminPassword = values.getOrDefault("admin-password", options.adminPassword);
+        options.mix = values.getOrDefault("mix", options.mix);
+        options.timeout = parseDuration(values.get("timeout"), options.timeout);
+        options.output = values.getOrDefault("output", options.output);
+        if(options.rate <= 0 || options.maxUsers <= 0 || options.users <= 0) {
+            throw new IllegalArgumentException("rate, max-users and users must be positive");
+        }
+        return options;
+    }
+
+    private static Duration parseDuration(String value, Duration defaultValue) {
+        return value != null ? Duration.parse("PT" + value.toUpperCase()) : defaultValue;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getMaxUsers() {
+        return maxUsers;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public String getAdminEmail() {
+        return adminEmail;
+    }
+
+    public String getAdminPassword() {
+        return adminPassword;
+    }
+
+    public String getMix() {
+        return mix;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    @Override
+    public String toString() {
+        return "base-url=" + baseUrl + ", rate=" + rate + "/s, warmup=" + warmup.toSeconds() + "s, duration=" + duration.toSeconds()
+                + "s, max-users=" + maxUsers + ", users=" + users + ", mix=" + mix;
+    }
+}
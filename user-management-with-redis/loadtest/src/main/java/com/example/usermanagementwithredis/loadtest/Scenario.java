@@ -0,0 +1,89 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import java.io.IOException;
+
+/*
+ * The journeys replayed by the virtual users, built from the requests of the Postman collection.
+ */
+public enum Scenario {
+
+    // A signed in user looking at their own profile, the most frequent call
+    READ_PROFILE("read-profile") {
+        @Override
+        void run(ApiClient client, TestAccounts accounts) throws IOException, InterruptedException {
+            TestAccounts.TestAccount account = accounts.random();
+            client.getUser(account.getToken(), account.getId());
+        }
+    },
+
+    // Password check included, so this is where BCrypt shows up
+    LOGIN("login") {
+        @Override
+        void run(ApiClient client, TestAccounts accounts) throws IOException, InterruptedException {
+            client.login(accounts.random().getEmail(), TestAccounts.PASSWORD);
+        }
+    },
+
+    // Sign up, sign in, edit the profile and close the account, leaving the data set as it was
+    USER_LIFECYCLE("user-lifecycle") {
+        @Override
+        void run(ApiClient client, TestAccounts accounts) throws IOException, InterruptedException {
+            String email = accounts.nextEmail();
+            ApiClient.Response created = client.createUser("Load", "Test", email, TestAccounts.PASSWORD);
+            if(!created.isSuccessful()) {
+                return;
+            }
+            long id = client.readJson(created).get("id").asLong();
+            String token;
+            try {
+                token = client.login(email, TestAccounts.PASSWORD);
+            } catch (IllegalStateException ex) {
+                client.deleteUser(accounts.getAdminToken(), id);
+                throw ex;
+            }
+            if(token == null) {
+                client.deleteUser(accounts.getAdminToken(), id);
+                return;
+            }
+            client.editUser(token, id, "Load", "Tested", email, TestAccounts.PASSWORD);
+            client.deleteUser(token, id);
+        }
+    },
+
+    // An administrator paging through the users
+    LIST_USERS("list-users") {
+        @Override
+        void run(ApiClient client, TestAccounts accounts) throws IOException, InterruptedException {
+            client.listUsers(accounts.getAdminToken(), 50);
+        }
+    },
+
+    // Anonymous role lookup done by the sign up form
+    ROLES("roles") {
+        @Override
+        void run(ApiClient client, TestAccounts accounts) throws IOException, InterruptedException {
+            client.getRoles();
+        }
+    };
+
+    private final String name;
+
+    Scenario(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    abstract void run(ApiClient client, TestAccounts accounts) throws IOException, InterruptedException;
+
+    public static Scenario byName(String name) {
+        for(Scenario scenario : values()) {
+            if(scenario.name.equals(name)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scenario " + name);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Weighted pick of the next scenario, from a mix such as "read-profile=45,login=20".
+ */
+public class ScenarioMix {
+
+    private final List<Scenario> scenarios = new ArrayList<>();
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+    private final int totalWeight;
+
+    public ScenarioMix(String mix) {
+        int total = 0;
+        for(String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if(parts.length != 2) {
+                throw new IllegalArgumentException("Expected scenario=weight but got " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if(weight > 0) {
+                total += weight;
+                scenarios.add(Scenario.byName(parts[0].trim()));
+                cumulativeWeights.add(total);
+            }
+        }
+        if(total == 0) {
+            throw new IllegalArgumentException("The scenario mix has no positive weight");
+        }
+        this.totalWeight = total;
+    }
+
+    public Scenario next() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        int index = 0;
+        while(cumulativeWeights.get(index) <= pick) {
+            index++;
+        }
+        return scenarios.get(index);
+    }
+}
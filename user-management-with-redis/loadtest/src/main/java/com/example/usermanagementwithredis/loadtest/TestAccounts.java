@@ -0,0 +1,130 @@
+package com.example.usermanagementwithredis.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The accounts the scenarios act as. They are bulk imported and logged in before the run,
+ * tagged with the run id so they never clash with real users or another run, and deleted after.
+ */
+public class TestAccounts {
+
+    public static final String PASSWORD = "load-test-password";
+
+    private final String runId;
+    private final String adminToken;
+    private final List<TestAccount> accounts = new ArrayList<>();
+    private final AtomicLong createdEmails = new AtomicLong();
+
+    public static class TestAccount {
+        private final long id;
+        private final String email;
+        private final String token;
+
+        TestAccount(long id, String email, String token) {
+            this.id = id;
+            this.email = email;
+            this.token = token;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getToken() {
+            return token;
+        }
+    }
+
+    private TestAccounts(String runId, String adminToken) {
+        this.runId = runId;
+        this.adminToken = adminToken;
+    }
+
+    public static TestAccounts prepare(ApiClient client, LoadTestOptions options, ExecutorService executor) throws IOException, InterruptedException, ExecutionException {
+        String adminToken = client.login(options.getAdminEmail(), options.getAdminPassword());
+        if(adminToken == null) {
+            throw new IllegalStateException("Administrator login failed for " + options.getAdminEmail());
+        }
+        TestAccounts testAccounts = new TestAccounts(Long.toString(System.currentTimeMillis(), 36), adminToken);
+
+        StringBuilder ndjson = new StringBuilder();
+        for(int i = 0; i < options.getUsers(); i++) {
+            ndjson.append(client.json(Map.of("firstName", "Load", "lastName", "Test", "email", testAccounts.email("account", i), "password", PASSWORD))).append('\n');
+        }
+        ApiClient.Response imported = client.importUsers(adminToken, ndjson.toString());
+        if(!imported.isSuccessful()) {
+            throw new IllegalStateException("Test account import failed with status " + imported.getStatus());
+        }
+
+        List<Future<TestAccount>> logins = new ArrayList<>();
+        List<Long> importedIds = new ArrayList<>();
+        for(String line : imported.getBody().split("\n")) {
+            if(line.isBlank()) {
+                continue;
+            }
+            JsonNode result = client.readJson(line);
+            if("CREATED".equals(result.path("status").asText())) {
+                long id = result.get("id").asLong();
+                importedIds.add(id);
+                String email = result.get("email").asText();
+                logins.add(executor.submit(() -> new TestAccount(id, email, client.login(email, PASSWORD))));
+            }
+        }
+        try {
+            for(Future<TestAccount> login : logins) {
+                TestAccount account = login.get();
+                if(account.getToken() != null) {
+                    testAccounts.accounts.add(account);
+                }
+            }
+        } catch (ExecutionException ex) {
+            // Such as a throttled login, the run stops here so the imported accounts go now
+            for(Long id : importedIds) {
+                client.deleteUser(adminToken, id);
+            }
+            throw new IllegalStateException(ex.getCause().getMessage(), ex.getCause());
+        }
+        if(testAccounts.accounts.isEmpty()) {
+            throw new IllegalStateException("No test account could be created and logged in");
+        }
+        return testAccounts;
+    }
+
+    public String getAdminToken() {
+        return adminToken;
+    }
+
+    public int size() {
+        return accounts.size();
+    }
+
+    public TestAccount random() {
+        return accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+    }
+
+    // A fresh address for the scenarios that sign a user up
+    public String nextEmail() {
+        return email("signup", createdEmails.incrementAndGet());
+    }
+
+    public void delete(ApiClient client) throws IOException, InterruptedException {
+        for(TestAccount account : accounts) {
+            client.deleteUser(adminToken, account.getId());
+        }
+    }
+
+    private String email(String kind, long index) {
+        return "loadtest-" + runId + "-" + kind + "-" + index + "@example.com";
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.usermanagementwithredis.configurations;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+/*
+ * Reactive mode (spring.main.web-application-type=reactive) talks to Redis through the
+ * Lettuce factory, Jedis has no reactive API.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRedisConfig {
+
+    // Named as the auto-configured template, which it replaces
+    @Bean(name = "reactiveStringRedisTemplate")
+    public ReactiveStringRedisTemplate provideReactiveStringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        if(!(connectionFactory instanceof ReactiveRedisConnectionFactory)) {
+            throw new IllegalStateException("The reactive web stack needs spring.redis.client-type=lettuce");
+        }
+        return new ReactiveStringRedisTemplate((ReactiveRedisConnectionFactory) connectionFactory);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.example.usermanagementwithredis.configurations;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Tomcat stays on the classpath for the servlet mode and Boot would pick it for the reactive
+ * mode too, so Netty is chosen explicitly to serve requests from its small event loop pool.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory provideNettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+}
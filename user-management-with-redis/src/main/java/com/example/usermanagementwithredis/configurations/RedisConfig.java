@@ -1,17 +1,52 @@
 package com.example.usermanagementwithredis.configurations;
 
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import com.example.usermanagementwithredis.repositories.UserRedisConverter;
+import com.example.usermanagementwithredis.repositories.UserStorageConverters;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.ReferenceResolver;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 @EnableRedisRepositories("com.example.usermanagementwithredis.repositories")
 public class RedisConfig {
 
+    private static final String JEDIS_POOL_NAME = "jedis";
+
     /*
      * We don't need to set all of these properties,
      * by default, redis will get them from application.yml
@@ -26,20 +61,149 @@ public class RedisConfig {
     @Value("${spring.redis.database}")
     private int database;
 
+    @Value("${spring.redis.timeout}")
+    private Duration timeout;
+    @Value("${spring.redis.connect-timeout}")
+    private Duration connectTimeout;
+
+    /*
+     * Pooled Jedis: one connection per borrowing thread, bounded by the pool settings.
+     * Jedis has no command hooks, so it is measured by the pool: usage and borrow waits are
+     * read back from the JMX beans commons-pool registers for it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.redis.client-type", havingValue = "jedis", matchIfMissing = true)
+    public JedisConnectionFactory provideJedisConnectionFactory(@Value("${spring.redis.jedis.pool.max-active}") int maxActive,
+                                                                @Value("${spring.redis.jedis.pool.max-idle}") int maxIdle,
+                                                                @Value("${spring.redis.jedis.pool.min-idle}") int minIdle,
+                                                                @Value("${spring.redis.jedis.pool.max-wait}") Duration maxWait) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(maxActive);
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setMaxWaitMillis(maxWait.toMillis());
+        poolConfig.setJmxEnabled(true);
+        poolConfig.setJmxNamePrefix(JEDIS_POOL_NAME);
+        JedisClientConfiguration clientConfiguration = JedisClientConfiguration.builder()
+                .usePooling().poolConfig(poolConfig).and()
+                .readTimeout(timeout)
+                .connectTimeout(connectTimeout)
+                .build();
+        return new JedisConnectionFactory(standaloneConfiguration(), clientConfiguration);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "spring.redis.client-type", havingValue = "jedis", matchIfMissing = true)
+    public MeterBinder provideJedisPoolMetrics() {
+        CommonsObjectPool2Metrics poolMetrics = new CommonsObjectPool2Metrics();
+        return registry -> {
+            poolMetrics.bindTo(registry);
+            // Borrowed connections are not part of the commons-pool binder, read them from the same MBean
+            Gauge.builder("commons.pool2.num.active", ManagementFactory.getPlatformMBeanServer(), RedisConfig::jedisPoolActive)
+                    .description("The number of instances currently borrowed from this pool")
+                    .tag("name", JEDIS_POOL_NAME)
+                    .baseUnit("objects")
+                    .register(registry);
+        };
+    }
+
+    /*
+     * Lettuce: every thread shares one multiplexed connection instead of borrowing one from a pool.
+     * Explicit pipelines (batch saves, multi-user reads) are flushed every pipelining-flush-buffer
+     * commands rather than after each one; single commands are still sent as they are issued.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.redis.client-type", havingValue = "lettuce")
+    public LettuceConnectionFactory provideLettuceConnectionFactory(ClientResources clientResources,
+                                                                    @Value("${spring.redis.lettuce.pipelining-flush-buffer}") int flushBuffer) {
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .clientResources(clientResources)
+                .clientOptions(ClientOptions.builder()
+                        .socketOptions(SocketOptions.builder().connectTimeout(connectTimeout).build())
+                        .build())
+                .commandTimeout(timeout)
+                .build();
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(standaloneConfiguration(), clientConfiguration);
+        connectionFactory.setShareNativeConnection(true);
+        connectionFactory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.buffered(flushBuffer));
+        return connectionFactory;
+    }
+
+    // Command latencies as the driver sees them, under lettuce.command.completion and lettuce.command.firstresponse
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "spring.redis.client-type", havingValue = "lettuce")
+    public ClientResources provideLettuceClientResources(MeterRegistry meterRegistry) {
+        return DefaultClientResources.builder()
+                .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(meterRegistry, MicrometerOptions.builder().histogram(true).build()))
+                .build();
+    }
+
     @Bean
-    public JedisConnectionFactory provideJedisConnectionFactory() {
+    public RedisTemplate<?, ?> provideRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<?, ?> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        return template;
+    }
+
+    @Bean
+    public StringRedisTemplate provideStringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return new StringRedisTemplate(connectionFactory);
+    }
+
+    /*
+     * Users of both hash layouts are always readable, each format registers the writer of its layout. Both beans are declared here, next to @EnableRedisRepositories,
+     * so they take the place of the ones the repository support would register under the same names.
+     */
+    @Bean(name = "redisCustomConversions")
+    public RedisCustomConversions provideRedisCustomConversions(@Value("${users.storage.format}") String storageFormat) {
+        List<Object> converters = new ArrayList<>();
+        if(UserStorageConverters.FORMAT_BINARY.equals(storageFormat)) {
+            converters.add(new UserStorageConverters.BinaryUserWriter());
+        } else if(UserStorageConverters.FORMAT_FIELDS.equals(storageFormat)) {
+            converters.add(new UserStorageConverters.FieldsUserWriter());
+        } else {
+            throw new IllegalArgumentException("Unknown users.storage.format " + storageFormat);
+        }
+        return new RedisCustomConversions(converters);
+    }
+
+    @Bean(name = "redisConverter")
+    public UserRedisConverter provideRedisConverter(RedisMappingContext mappingContext,
+                                                    ReferenceResolver referenceResolver,
+                                                    RedisCustomConversions customConversions,
+                                                    ObjectProvider<RoleCatalog> roleCatalog) {
+        // The catalog needs the repositories built on this converter, so it is looked up on first read
+        UserRedisConverter converter = new UserRedisConverter(mappingContext, referenceResolver,
+                new UserStorageConverters.UserReader(roleId -> roleCatalog.getObject().getById(roleId), roleMask -> roleCatalog.getObject().getRoles(roleMask)));
+        converter.setCustomConversions(customConversions);
+        return converter;
+    }
+
+    @Bean
+    public RedisMessageListenerContainer provideRedisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    private RedisStandaloneConfiguration standaloneConfiguration() {
         RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration();
         configuration.setHostName(host);
         configuration.setPort(port);
         configuration.setPassword(password);
         configuration.setDatabase(database);
-        return new JedisConnectionFactory(configuration);
+        return configuration;
     }
 
-    @Bean
-    public RedisTemplate<?, ?> provideRedisTemplate(JedisConnectionFactory connectionFactory) {
-        RedisTemplate<?, ?> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        return template;
+    private static double jedisPoolActive(MBeanServer server) {
+        double active = 0;
+        try {
+            for(ObjectName name : server.queryNames(new ObjectName("org.apache.commons.pool2:type=GenericObjectPool,name=" + JEDIS_POOL_NAME + "*"), null)) {
+                active += ((Number) server.getAttribute(name, "NumActive")).doubleValue();
+            }
+        } catch (Exception ex) {
+            active = Double.NaN;
+        }
+        return active;
     }
 }
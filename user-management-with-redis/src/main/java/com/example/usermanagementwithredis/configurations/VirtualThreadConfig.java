@@ -0,0 +1,42 @@
+package com.example.usermanagementwithredis.configurations;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+
+/*
+ * With requests.virtual-threads=true (Java 21+) every request, and the blocking Redis calls
+ * it makes, runs on its own virtual thread instead of the bounded Tomcat worker pool. Streamed
+ * responses use virtual threads too. BCrypt stays on its bounded pool, it is CPU work that
+ * virtual threads do not speed up, and the request waits on it without holding a carrier thread.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "requests.virtual-threads", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> provideVirtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("tomcat-handler-");
+        logger.info("Tomcat requests run on virtual threads, server.tomcat.threads.max no longer applies");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    // Replaces the pooled executor Spring MVC runs StreamingResponseBody callbacks on
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor provideApplicationTaskExecutor() {
+        return new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor("mvc-async-"));
+    }
+
+}
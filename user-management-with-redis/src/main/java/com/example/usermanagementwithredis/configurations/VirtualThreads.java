@@ -0,0 +1,41 @@
+package com.example.usermanagementwithredis.configurations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * The build targets Java 17, so the Java 21 virtual thread API is reached through reflection.
+ * The same jar then runs on platform threads on 17 and can switch to virtual threads on 21.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    // Same as Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        if(!isSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or newer, running on " + Runtime.version());
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (InvocationTargetException ex) {
+            throw new IllegalStateException("Virtual thread executor could not be created", ex.getTargetException());
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual thread executor could not be created", ex);
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+package com.example.usermanagementwithredis.controllers;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.EmailConflictException;
+import com.example.usermanagementwithredis.repositories.UserPage;
+import com.example.usermanagementwithredis.repositories.UserSearchIndex;
+import com.example.usermanagementwithredis.security.LoginThrottledException;
+import com.example.usermanagementwithredis.security.PasswordHashingRejectedException;
+import com.example.usermanagementwithredis.security.VerifiedToken;
+import com.example.usermanagementwithredis.services.ReactiveUserService;
+import com.example.usermanagementwithredis.services.RoleService;
+import com.example.usermanagementwithredis.services.UserImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Optional;
+
+/*
+ * Same routes, payloads and access rules as UserManagementController, served by the reactive stack.
+ */
+@RestController
+@RequestMapping(path = "/users")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserManagementController {
+
+    private final Logger logger = LoggerFactory.getLogger(ReactiveUserManagementController.class);
+    private final ReactiveUserService userService;
+    private final RoleService roleService;
+    private final UserImportService userImportService;
+
+    @Autowired
+    public ReactiveUserManagementController(ReactiveUserService userService, RoleService roleService, UserImportService userImportService) {
+        this.userService = userService;
+        this.roleService = roleService;
+        this.userImportService = userImportService;
+    }
+
+    @PostMapping(path = "/login", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<LoginResponse>> login(@Valid @RequestBody LoginRequest loginRequest, ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        String clientAddress = remoteAddress != null && remoteAddress.getAddress() != null ? remoteAddress.getAddress().getHostAddress() : null;
+        return userService.login(loginRequest, clientAddress)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.UNAUTHORIZED))
+                .onErrorResume(this::handleError);
+    }
+
+    @PostMapping(path = "/logout")
+    @PreAuthorize("isAuthenticated()")
+    public Mono<ResponseEntity<Void>> logout() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Authentication::getCredentials)
+                .filter(VerifiedToken.class::isInstance)
+                .flatMap(credentials -> userService.logout((VerifiedToken) credentials).thenReturn(ResponseEntity.ok().<Void>build()))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.UNAUTHORIZED))
+                .onErrorResume(this::handleError);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public Mono<ResponseEntity<List<UserResponse>>> getAllUsers(@RequestParam(name = "cursor", required = false) String cursor,
+                                                                @RequestParam(name = "size", required = false) Integer size) {
+        Mono<ResponseEntity<List<UserResponse>>> response = null;
+        if(cursor == null || UserPage.isCursor(cursor)) {
+            response = userService.getUsersPage(cursor != null ? cursor : UserPage.FIRST_CURSOR, size)
+                    .map(page -> ResponseEntity.ok().header(UserManagementController.NEXT_CURSOR_HEADER, page.getNextCursor()).body(page.getUsers()));
+        } else {
+            response = Mono.just(ResponseEntity.badRequest().build());
+        }
+        return response.onErrorResume(this::handleError);
+    }
+
+    @GetMapping(path = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public Mono<ResponseEntity<List<UserResponse>>> searchUsers(@RequestParam(name = "field", defaultValue = "email") String field,
+                                                                @RequestParam(name = "prefix", defaultValue = "") String prefix,
+                                                                @RequestParam(name = "cursor", required = false) String cursor,
+                                                                @RequestParam(name = "size", required = false) Integer size) {
+        String after = cursor != null ? UserSearchIndex.decodeCursor(cursor) : null;
+        if(!UserSearchIndex.FIELDS.contains(field) || (cursor != null && after == null)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return userService.searchUsers(field, prefix, after, size)
+                .map(page -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                    if(page.getNextCursor() != null) {
+                        builder.header(UserManagementController.NEXT_CURSOR_HEADER, page.getNextCursor());
+                    }
+                    return builder.body(page.getUsers());
+                })
+                .onErrorResume(this::handleError);
+    }
+
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public Flux<UserResponse> streamAllUsers() {
+        return userService.streamAllUsers();
+    }
+
+    @GetMapping(path = "/me", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public Mono<ResponseEntity<CurrentUserResponse>> getCurrentUser() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Authentication::getPrincipal)
+                .filter(User.class::isInstance)
+                .map(principal -> ResponseEntity.ok(userService.getCurrentUser((User) principal)))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.UNAUTHORIZED))
+                .onErrorResume(this::handleError);
+    }
+
+    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
+    public Mono<ResponseEntity<byte[]>> getUserById(@PathVariable("id") Long id, ServerWebExchange exchange) {
+        // Read before the user, so the tag sent with a body is never newer than the body
+        return userService.getUserETag(id)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                // A matching tag has already set the 304 and its ETag on the exchange, nothing is left to write
+                .flatMap(etag -> etag.isPresent() && exchange.checkNotModified(etag.get())
+                        ? Mono.<ResponseEntity<byte[]>>empty()
+                        : userService.getUserJson(id, etag.orElse(null))
+                                .map(user -> ok(etag.orElse(null)).contentType(MediaType.APPLICATION_JSON).body(user.getJson()))
+                                .defaultIfEmpty(ResponseEntity.notFound().build()))
+                .onErrorResume(this::handleError);
+    }
+
+    @GetMapping(path = "/roles", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<byte[]>> getAllRoles(ServerWebExchange exchange) {
+        // The roles and their version come from the in-memory catalog, so the call does not block
+        // Null, and so an empty Mono, once checkNotModified has answered with 304
+        return Mono.fromCallable(() -> {
+                    EncodedJson roles = roleService.getAllJson();
+                    return roles.getEtag() == null || !exchange.checkNotModified(roles.getEtag())
+                            ? ok(roles.getEtag()).contentType(MediaType.APPLICATION_JSON).body(roles.getJson())
+                            : null;
+                })
+                .onErrorResume(this::handleError);
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<UserResponse>> createUser(@Valid @RequestBody UserRequest userRequest) {
+        return userService.isEmailAvailable(userRequest.getEmail())
+                .flatMap(available -> {
+                    if(!available) {
+                        return Mono.just(new ResponseEntity<UserResponse>(HttpStatus.CONFLICT));
+                    }
+                    return canAssignRoles(userRequest)
+                            .flatMap(allowed -> allowed
+                                    ? userService.createUser(userRequest).map(ResponseEntity::ok)
+                                    : Mono.just(new ResponseEntity<UserResponse>(HttpStatus.FORBIDDEN)));
+                })
+                .onErrorResume(this::handleError);
+    }
+
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public Flux<UserImportResult> importUsers(@RequestBody Flux<String> lines) {
+        return userImportService.importUsers(lines);
+    }
+
+    @PutMapping(path = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
+    public Mono<ResponseEntity<UserResponse>> editUser(@PathVariable("id") Long id, @Valid @RequestBody UserRequest userRequest) {
+        return canAssignRoles(userRequest)
+                .flatMap(allowed -> allowed
+                        ? userService.editUser(id, userRequest).map(ResponseEntity::ok).defaultIfEmpty(ResponseEntity.notFound().build())
+                        : Mono.just(new ResponseEntity<UserResponse>(HttpStatus.FORBIDDEN)))
+                .onErrorResume(this::handleError);
+    }
+
+    @DeleteMapping(path = "/{id}")
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
+    public Mono<ResponseEntity<Void>> deleteUser(@PathVariable("id") Long id) {
+        return userService.deleteUser(id)
+                .map(success -> success ? ResponseEntity.ok().<Void>build() : ResponseEntity.notFound().<Void>build())
+                .onErrorResume(this::handleError);
+    }
+
+    @DeleteMapping(path = "/{id}/tokens")
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
+    public Mono<ResponseEntity<Void>> revokeTokens(@PathVariable("id") Long id) {
+        return userService.revokeTokens(id)
+                .map(success -> success ? ResponseEntity.ok().<Void>build() : ResponseEntity.notFound().<Void>build())
+                .onErrorResume(this::handleError);
+    }
+
+    // Only administrators can hand out the administrator role, anonymous callers have no principal
+    private Mono<Boolean> canAssignRoles(UserRequest userRequest) {
+        if(!userService.createUserRequestHasAdminRole(userRequest)) {
+            return Mono.just(true);
+        }
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .map(Authentication::getPrincipal)
+                .map(principal -> principal instanceof User && userService.createUserRequestHasAdminRole((User) principal))
+                .defaultIfEmpty(false);
+    }
+
+    private <T> Mono<ResponseEntity<T>> handleError(Throwable ex) {
+        ResponseEntity<T> response = null;
+        if(ex instanceof EmailConflictException) {
+            // Lost the claim to a concurrent write of the same email
+            response = new ResponseEntity<>(HttpStatus.CONFLICT);
+        } else if(ex instanceof LoginThrottledException) {
+            response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(((LoginThrottledException) ex).getRetryAfterSeconds()))
+                    .build();
+        } else if(ex instanceof PasswordHashingRejectedException) {
+            response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(((PasswordHashingRejectedException) ex).getRetryAfterSeconds()))
+                    .build();
+        } else {
+            logger.error("Exception captured", ex);
+            response = ResponseEntity.internalServerError().build();
+        }
+        return Mono.just(response);
+    }
+
+    // The ETag is optional, users saved before versions existed have none
+    private static ResponseEntity.BodyBuilder ok(String etag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        return etag != null ? builder.eTag(etag) : builder;
+    }
+
+}
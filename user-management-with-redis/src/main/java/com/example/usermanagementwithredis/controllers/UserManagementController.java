@@ -2,55 +2,134 @@ package com.example.usermanagementwithredis.controllers;
 
 import com.example.usermanagementwithredis.dtos.*;
 import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.EmailConflictException;
+import com.example.usermanagementwithredis.repositories.UserPage;
+import com.example.usermanagementwithredis.repositories.UserSearchIndex;
+import com.example.usermanagementwithredis.security.LoginThrottledException;
+import com.example.usermanagementwithredis.security.PasswordHashingRejectedException;
+import com.example.usermanagementwithredis.security.VerifiedToken;
 import com.example.usermanagementwithredis.services.RoleService;
+import com.example.usermanagementwithredis.services.UserImportService;
 import com.example.usermanagementwithredis.services.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.List;
 
 @RestController
 @RequestMapping(path = "/users")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserManagementController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final Logger logger = LoggerFactory.getLogger(UserManagementController.class);
     private final UserService userService;
     private final RoleService roleService;
+    private final UserImportService userImportService;
 
     @Autowired
-    public UserManagementController(@Lazy UserService userService, RoleService roleService) {
+    public UserManagementController(@Lazy UserService userService, RoleService roleService, UserImportService userImportService) {
         this.userService = userService;
         this.roleService = roleService;
+        this.userImportService = userImportService;
     }
 
     @PostMapping(path = "/login", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest loginRequest) {
-        LoginResponse loginResponse = userService.login(loginRequest);
+    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest loginRequest, HttpServletRequest request) {
         ResponseEntity<LoginResponse> response = null;
-        if(loginResponse != null) {
-            response = new ResponseEntity<>(loginResponse, HttpStatus.OK);
-        } else {
-            response = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        try {
+            LoginResponse loginResponse = userService.login(loginRequest, request.getRemoteAddr());
+            if(loginResponse != null) {
+                response = new ResponseEntity<>(loginResponse, HttpStatus.OK);
+            } else {
+                response = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            }
+        } catch (LoginThrottledException ex) {
+            response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                    .build();
+        } catch (PasswordHashingRejectedException ex) {
+            response = serviceUnavailable(ex);
+        }
+        return response;
+    }
+
+    // Revokes the token the request was authenticated with
+    @PostMapping(path = "/logout")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Void> logout() {
+        ResponseEntity<Void> response = null;
+        try {
+            Object credentials = SecurityContextHolder.getContext().getAuthentication().getCredentials();
+            if(credentials instanceof VerifiedToken) {
+                userService.logout((VerifiedToken) credentials);
+                response = ResponseEntity.ok().build();
+            } else {
+                response = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            }
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+            response = ResponseEntity.internalServerError().build();
         }
         return response;
     }
 
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    @PreAuthorize("isAuthenticated() and hasAuthority('Administrator')")
-    public ResponseEntity<List<UserResponse>> getAllUsers() {
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public ResponseEntity<List<UserResponse>> getAllUsers(@RequestParam(name = "cursor", required = false) String cursor,
+                                                          @RequestParam(name = "size", required = false) Integer size) {
+        ResponseEntity<List<UserResponse>> response = null;
+        try {
+            // Without a cursor the first page is returned, ?stream=true writes out every user
+            if(cursor == null || UserPage.isCursor(cursor)) {
+                UserPageResponse page = userService.getUsersPage(cursor != null ? cursor : UserPage.FIRST_CURSOR, size);
+                response = ResponseEntity.ok().header(NEXT_CURSOR_HEADER, page.getNextCursor()).body(page.getUsers());
+            } else {
+                response = ResponseEntity.badRequest().build();
+            }
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+            response = ResponseEntity.internalServerError().build();
+        }
+        return response;
+    }
+
+    // Prefix search on firstName, lastName or email in term order, pages continue from the X-Next-Cursor of the previous one
+    @GetMapping(path = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public ResponseEntity<List<UserResponse>> searchUsers(@RequestParam(name = "field", defaultValue = "email") String field,
+                                                          @RequestParam(name = "prefix", defaultValue = "") String prefix,
+                                                          @RequestParam(name = "cursor", required = false) String cursor,
+                                                          @RequestParam(name = "size", required = false) Integer size) {
         ResponseEntity<List<UserResponse>> response = null;
         try {
-            List<UserResponse> users = userService.getAllUsers();
-            response = ResponseEntity.ok(users);
+            String after = cursor != null ? UserSearchIndex.decodeCursor(cursor) : null;
+            if(!UserSearchIndex.FIELDS.contains(field) || (cursor != null && after == null)) {
+                response = ResponseEntity.badRequest().build();
+            } else {
+                UserPageResponse page = userService.searchUsers(field, prefix, after, size);
+                ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                // No cursor on the last page
+                if(page.getNextCursor() != null) {
+                    builder.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+                }
+                response = builder.body(page.getUsers());
+            }
         } catch (Exception ex) {
             logger.error("Exception captured", ex);
             response = ResponseEntity.internalServerError().build();
@@ -58,16 +137,48 @@ public class UserManagementController {
         return response;
     }
 
-    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
-    @PreAuthorize("isAuthenticated and hasAuthority('Administrator') or isAuthenticated() and principal.id == #id")
-    public ResponseEntity<UserResponse> getUserById(@PathVariable("id") Long id) {
-        ResponseEntity<UserResponse> response = null;
+    @GetMapping(params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        StreamingResponseBody body = outputStream -> userService.writeAllUsers(outputStream);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // Answered from the authenticated principal, which stateless claims mode builds from the token alone
+    @GetMapping(path = "/me", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<CurrentUserResponse> getCurrentUser() {
+        ResponseEntity<CurrentUserResponse> response = null;
         try {
-            UserResponse user = userService.getUserById(id);
-            if(user != null) {
-                response = ResponseEntity.ok(user);
+            Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+            if(principal instanceof User) {
+                response = ResponseEntity.ok(userService.getCurrentUser((User) principal));
             } else {
-                response = ResponseEntity.notFound().build();
+                response = new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            }
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+            response = ResponseEntity.internalServerError().build();
+        }
+        return response;
+    }
+
+    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("isAuthenticated and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
+    public ResponseEntity<byte[]> getUserById(@PathVariable("id") Long id, WebRequest webRequest) {
+        ResponseEntity<byte[]> response = null;
+        try {
+            // Read before the user, so the tag sent with a body is never newer than the body
+            String etag = userService.getUserETag(id);
+            // A matching tag has already written the 304 and its ETag, null tells Spring MVC the response is complete
+            if(etag == null || !webRequest.checkNotModified(etag)) {
+                // Written as the cached bytes, without mapping or serializing the user again
+                EncodedJson user = userService.getUserJson(id, etag);
+                if(user != null) {
+                    response = ok(etag).contentType(MediaType.APPLICATION_JSON).body(user.getJson());
+                } else {
+                    response = ResponseEntity.notFound().build();
+                }
             }
         } catch (Exception ex) {
             logger.error("Exception captured", ex);
@@ -77,11 +188,13 @@ public class UserManagementController {
     }
 
     @GetMapping(path = "/roles", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<RoleResponse>> getAllRoles() {
-        ResponseEntity<List<RoleResponse>> response = null;
+    public ResponseEntity<byte[]> getAllRoles(WebRequest webRequest) {
+        ResponseEntity<byte[]> response = null;
         try {
-            List<RoleResponse> roles = roleService.getAll();
-            response = new ResponseEntity<>(roles, HttpStatus.OK);
+            EncodedJson roles = roleService.getAllJson();
+            if(roles.getEtag() == null || !webRequest.checkNotModified(roles.getEtag())) {
+                response = ok(roles.getEtag()).contentType(MediaType.APPLICATION_JSON).body(roles.getJson());
+            }
         } catch (Exception ex) {
             response = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -104,6 +217,11 @@ public class UserManagementController {
             } else {
                 response = new ResponseEntity<>(HttpStatus.CONFLICT);
             }
+        } catch (EmailConflictException ex) {
+            // Lost the claim to a concurrent create of the same email
+            response = new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (PasswordHashingRejectedException ex) {
+            response = serviceUnavailable(ex);
         } catch (Exception ex) {
             logger.error("Exception captured", ex);
             response = ResponseEntity.internalServerError().build();
@@ -111,8 +229,16 @@ public class UserManagementController {
         return response;
     }
 
+    @PostMapping(path = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication)")
+    public ResponseEntity<StreamingResponseBody> importUsers(HttpServletRequest request) {
+        // The request body is read record by record while the results are written back
+        StreamingResponseBody body = outputStream -> userImportService.importUsers(request.getInputStream(), outputStream);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @PutMapping(path = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    @PreAuthorize("isAuthenticated and hasAuthority('Administrator') or isAuthenticated() and principal.id == #id")
+    @PreAuthorize("isAuthenticated and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
     public ResponseEntity<UserResponse> editUser(@PathVariable("id") Long id, @Valid @RequestBody UserRequest userRequest) {
         ResponseEntity<UserResponse> response = null;
         try {
@@ -128,6 +254,10 @@ public class UserManagementController {
             } else {
                 response = new ResponseEntity<>(HttpStatus.FORBIDDEN);
             }
+        } catch (EmailConflictException ex) {
+            response = new ResponseEntity<>(HttpStatus.CONFLICT);
+        } catch (PasswordHashingRejectedException ex) {
+            response = serviceUnavailable(ex);
         } catch(Exception ex) {
             logger.error("Exception captured", ex);
             response = ResponseEntity.internalServerError().build();
@@ -136,7 +266,7 @@ public class UserManagementController {
     }
 
     @DeleteMapping(path = "/{id}")
-    @PreAuthorize("isAuthenticated() and hasAuthority('Administrator') or isAuthenticated() and principal.id == #id")
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
     public ResponseEntity<Void> deleteUser(@PathVariable("id") Long id) {
         ResponseEntity<Void> response = null;
         try {
@@ -152,4 +282,36 @@ public class UserManagementController {
         }
         return response;
     }
+
+    // Revokes every token issued to the user so far, on all nodes
+    @DeleteMapping(path = "/{id}/tokens")
+    @PreAuthorize("isAuthenticated() and @roleAuthorization.isAdministrator(authentication) or isAuthenticated() and principal.id == #id")
+    public ResponseEntity<Void> revokeTokens(@PathVariable("id") Long id) {
+        ResponseEntity<Void> response = null;
+        try {
+            boolean success = userService.revokeTokens(id);
+            if(success) {
+                response = ResponseEntity.ok().build();
+            } else {
+                response = ResponseEntity.notFound().build();
+            }
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+            response = ResponseEntity.internalServerError().build();
+        }
+        return response;
+    }
+
+    private <T> ResponseEntity<T> serviceUnavailable(PasswordHashingRejectedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .build();
+    }
+
+    // The ETag is optional, users saved before versions existed have none
+    private static ResponseEntity.BodyBuilder ok(String etag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        return etag != null ? builder.eTag(etag) : builder;
+    }
+
 }
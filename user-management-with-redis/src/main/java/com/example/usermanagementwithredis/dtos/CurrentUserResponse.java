@@ -0,0 +1,19 @@
+package com.example.usermanagementwithredis.dtos;
+
+import lombok.*;
+
+import java.util.Set;
+
+/*
+ * What the bearer token says about its user, the profile fields are not part of it.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class CurrentUserResponse {
+    private Long id;
+    private String email;
+    private Set<RoleResponse> roles;
+}
@@ -0,0 +1,14 @@
+package com.example.usermanagementwithredis.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * Response body already serialized to JSON, with the ETag of the version it was serialized from.
+ */
+@Getter
+@AllArgsConstructor
+public class EncodedJson {
+    private final String etag;
+    private final byte[] json;
+}
@@ -0,0 +1,17 @@
+package com.example.usermanagementwithredis.dtos;
+
+import com.example.usermanagementwithredis.entities.Role;
+import org.springframework.stereotype.Component;
+
+@Component
+public class RoleMapper {
+
+    public RoleResponse toResponse(Role role) {
+        RoleResponse response = null;
+        if(role != null) {
+            response = new RoleResponse(role.getId() != null ? String.valueOf(role.getId()) : null, role.getName());
+        }
+        return response;
+    }
+
+}
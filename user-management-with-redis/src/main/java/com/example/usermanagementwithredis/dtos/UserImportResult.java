@@ -0,0 +1,21 @@
+package com.example.usermanagementwithredis.dtos;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class UserImportResult {
+    public static final String CREATED = "CREATED";
+    public static final String DUPLICATED = "DUPLICATED";
+    public static final String INVALID = "INVALID";
+    public static final String FAILED = "FAILED";
+
+    private long line;
+    private String email;
+    private String status;
+    private Long id;
+    private String message;
+}
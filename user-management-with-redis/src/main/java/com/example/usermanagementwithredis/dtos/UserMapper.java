@@ -0,0 +1,91 @@
+package com.example.usermanagementwithredis.dtos;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Reflection-free replacement for the ModelMapper conversions,
+ * producing the same DTOs field by field. Each conversion is timed under user.mapping.
+ */
+@Component
+public class UserMapper {
+
+    private final RoleMapper roleMapper;
+    private final Timer toResponseTimer;
+    private final Timer toEntityTimer;
+
+    @Autowired
+    public UserMapper(RoleMapper roleMapper, MeterRegistry meterRegistry) {
+        this.roleMapper = roleMapper;
+        this.toResponseTimer = Timer.builder("user.mapping").tag("target", "response").register(meterRegistry);
+        this.toEntityTimer = Timer.builder("user.mapping").tag("target", "entity").register(meterRegistry);
+    }
+
+    public UserResponse toResponse(User user) {
+        long start = System.nanoTime();
+        try {
+            return convert(user);
+        } finally {
+            toResponseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public User toEntity(UserRequest userRequest) {
+        long start = System.nanoTime();
+        try {
+            return convert(userRequest);
+        } finally {
+            toEntityTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Only what the token carries, so it can be answered from a principal built from the claims
+    public CurrentUserResponse toCurrentUser(User user) {
+        Set<RoleResponse> roles = new LinkedHashSet<>();
+        if(user.getRoles() != null) {
+            for(Role role : user.getRoles()) {
+                roles.add(roleMapper.toResponse(role));
+            }
+        }
+        return new CurrentUserResponse(user.getId(), user.getEmail(), roles);
+    }
+
+    private UserResponse convert(User user) {
+        UserResponse response = null;
+        if(user != null) {
+            Set<RoleResponse> roles = null;
+            if(user.getRoles() != null) {
+                roles = new LinkedHashSet<>(user.getRoles().size());
+                for(Role role : user.getRoles()) {
+                    roles.add(roleMapper.toResponse(role));
+                }
+            }
+            response = new UserResponse(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), roles);
+        }
+        return response;
+    }
+
+    private User convert(UserRequest userRequest) {
+        User user = null;
+        if(userRequest != null) {
+            Set<Role> roles = null;
+            if(userRequest.getRoles() != null) {
+                roles = new LinkedHashSet<>(userRequest.getRoles().size());
+                for(RoleRequest roleRequest : userRequest.getRoles()) {
+                    roles.add(new Role(roleRequest.getId(), null));
+                }
+            }
+            user = new User(userRequest.getFirstName(), userRequest.getLastName(), userRequest.getEmail(), null, roles);
+        }
+        return user;
+    }
+
+}
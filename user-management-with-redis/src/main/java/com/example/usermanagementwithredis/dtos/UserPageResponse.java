@@ -0,0 +1,15 @@
+package com.example.usermanagementwithredis.dtos;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class UserPageResponse {
+    private List<UserResponse> users;
+    private String nextCursor;
+}
@@ -20,8 +20,15 @@ public class Role {
     private Long id;
     @Indexed
     private String name;
+    // Position of the role in role masks, assigned once when the role is created and never reused
+    private Integer bit;
 
     public Role(String name) {
         this.name = name;
     }
+
+    public Role(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
 }
@@ -4,7 +4,6 @@ import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Reference;
 import org.springframework.data.redis.core.RedisHash;
-import org.springframework.data.redis.core.index.Indexed;
 
 import java.util.Set;
 
@@ -13,14 +12,15 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @ToString
-@RedisHash("users")
+@RedisHash(User.KEYSPACE)
 public class User {
+    public static final String KEYSPACE = "users";
+
     @Id
-    @Indexed
     private Long id;
     private String firstName;
     private String lastName;
-    @Indexed
+    // Looked up through the email index of the user repository instead of a Spring Data index
     private String email;
     private String protectedPassword;
     @Reference
@@ -0,0 +1,19 @@
+package com.example.usermanagementwithredis.repositories;
+
+/*
+ * Raised when a save loses the email claim to another user, the write is not applied.
+ */
+public class EmailConflictException extends RuntimeException {
+
+    private final String email;
+
+    public EmailConflictException(String email) {
+        super("Email already claimed by another user");
+        this.email = email;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * email -> id index of the users, kept in one Redis hash or spread over users.email-index.shards
+ * hashes so each one stays small enough for the compact hash encoding. An email belongs to the
+ * shard given by the first four bytes of its SHA-1, which callers resolve here and pass to the scripts
+ * as keys. Shard keys carry the shard count, so a rebuild for another count never mixes layouts.
+ */
+@Component
+public class EmailIndex {
+
+    static final String KEY = User.KEYSPACE + ":emails";
+    // Shard count the index was last built for
+    static final String LAYOUT_KEY = KEY + ":layout";
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final int shards;
+
+    public EmailIndex(@Value("${users.email-index.shards}") int shards) {
+        if(shards < 1) {
+            throw new IllegalArgumentException("users.email-index.shards must be at least 1, found " + shards);
+        }
+        this.shards = shards;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    String keyFor(String email) {
+        return keyFor(email, shards);
+    }
+
+    static String keyFor(String email, int shards) {
+        if(shards == 1) {
+            return KEY;
+        }
+        byte[] digest = DIGEST.get().digest(email.getBytes(StandardCharsets.UTF_8));
+        long prefix = ((digest[0] & 0xFFL) << 24) | ((digest[1] & 0xFFL) << 16) | ((digest[2] & 0xFFL) << 8) | (digest[3] & 0xFFL);
+        return KEY + ":" + shards + ":" + prefix % shards;
+    }
+
+    static List<String> keys(int shards) {
+        if(shards == 1) {
+            return List.of(KEY);
+        }
+        List<String> keys = new ArrayList<>(shards);
+        for(int i = 0; i < shards; i++) {
+            keys.add(KEY + ":" + shards + ":" + i);
+        }
+        return keys;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+
+import java.util.List;
+
+/*
+ * Raised when some writes of a batch save fail, the others are applied. The failed users keep
+ * no new id, the users that lost their email claim are treated as in a successful batch.
+ */
+public class PartialSaveException extends RuntimeException {
+
+    private final List<User> failed;
+
+    public PartialSaveException(List<User> failed, Throwable cause) {
+        super(failed.size() + " users could not be saved", cause);
+        this.failed = failed;
+    }
+
+    public List<User> getFailed() {
+        return failed;
+    }
+
+}
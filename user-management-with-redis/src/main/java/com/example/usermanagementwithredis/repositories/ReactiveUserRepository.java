@@ -0,0 +1,168 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Non-blocking access to the user hashes for the reactive web stack. It reads and writes the same
+ * layouts and runs the same scripts as UserRepository. Hashes are decoded by the same converter,
+ * which resolves role references against the in-memory role catalog instead of following them in Redis.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserRepository {
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisConverter converter;
+    private final EmailIndex emailIndex;
+    private final SecureRandom idGenerator = new SecureRandom();
+
+    @Autowired
+    public ReactiveUserRepository(ReactiveStringRedisTemplate redisTemplate, RedisConnectionFactory connectionFactory, RedisConverter converter, EmailIndex emailIndex) {
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.converter = converter;
+        this.emailIndex = emailIndex;
+    }
+
+    // Read as raw bytes, the compact layout keeps a binary field that would not survive string decoding
+    public Mono<User> findById(Long id) {
+        ByteBuffer key = ByteBuffer.wrap(UserScripts.userKey(id).getBytes(StandardCharsets.UTF_8));
+        return redisTemplate.execute(connection -> connection.hashCommands().hGetAll(key))
+                .collectMap(entry -> ByteUtils.getBytes(entry.getKey()), entry -> ByteUtils.getBytes(entry.getValue()))
+                .filter(fields -> !fields.isEmpty())
+                .map(fields -> toUser(id, fields));
+    }
+
+    public Mono<User> findByEmail(String email) {
+        return redisTemplate.<String, String>opsForHash().get(emailIndex.keyFor(email), email)
+                .flatMap(id -> findById(Long.valueOf(id)));
+    }
+
+    // Empty for a missing user and for one not saved since versions were introduced
+    public Mono<Long> findVersion(Long id) {
+        return redisTemplate.<String, String>opsForHash().get(UserScripts.VERSIONS_KEY, String.valueOf(id))
+                .map(Long::valueOf);
+    }
+
+    // Cached response body of the user, dropped by the save and delete scripts
+    public Mono<byte[]> findJson(Long id) {
+        ByteBuffer key = ByteBuffer.wrap(UserScripts.jsonKey(id).getBytes(StandardCharsets.UTF_8));
+        return redisTemplate.execute(connection -> connection.stringCommands().get(key))
+                .next()
+                .map(ByteUtils::getBytes);
+    }
+
+    public Mono<Boolean> saveJson(Long id, byte[] json, Duration ttl) {
+        ByteBuffer key = ByteBuffer.wrap(UserScripts.jsonKey(id).getBytes(StandardCharsets.UTF_8));
+        return redisTemplate.execute(connection -> connection.stringCommands().set(key, ByteBuffer.wrap(json), Expiration.from(ttl), RedisStringCommands.SetOption.upsert()))
+                .next();
+    }
+
+    /*
+     * Same paging as UserRepository.findPage. The reactive template has no single SSCAN step, so the step is sent
+     * on the shared native Lettuce connection, which the factory hands out without opening a new one.
+     */
+    public Mono<UserPage> findPage(String cursor, int count) {
+        return Mono.using(connectionFactory::getConnection, connection -> UserScan.pageAsync(connection.getNativeConnection(), cursor, count), RedisConnection::close)
+                .flatMap(scan -> Flux.fromIterable(scan.getIds())
+                        .flatMapSequential(id -> findById(Long.valueOf(id)))
+                        .collectList()
+                        .map(users -> new UserPage(users, scan.getNextCursor())));
+    }
+
+    // Same paging as UserRepository.search, the next cursor is null on the last page
+    @SuppressWarnings("unchecked")
+    public Mono<UserPage> search(String field, String prefix, String after, int count) {
+        return redisTemplate.execute(UserScripts.SEARCH_USERS, List.of(UserSearchIndex.keyFor(field)), UserScripts.searchArgs(prefix, after, count))
+                .next()
+                .defaultIfEmpty(List.of())
+                .flatMap(found -> {
+                    List<String> members = (List<String>) found;
+                    String nextCursor = members.size() > count ? UserSearchIndex.encodeCursor(members.get(count - 1)) : null;
+                    return Flux.fromIterable(members.subList(0, Math.min(count, members.size())))
+                            .flatMapSequential(member -> findById(UserSearchIndex.idOf(member)))
+                            .collectList()
+                            .map(users -> new UserPage(users, nextCursor));
+                });
+    }
+
+    public Mono<Boolean> isEmailClaimed(String email) {
+        return redisTemplate.opsForHash().hasKey(emailIndex.keyFor(email), email);
+    }
+
+    // Same retry as UserRepository.save when the email read first was changed before the script ran
+    public Mono<User> save(User user) {
+        return save(user, user.getId() == null);
+    }
+
+    private Mono<User> save(User user, boolean isNew) {
+        return findStoredEmail(user.getId())
+                .flatMap(previousEmail -> {
+                    UserSaveCommand command = UserSaveCommand.prepare(user, previousEmail, converter, emailIndex, idGenerator);
+                    return redisTemplate.execute(UserScripts.SAVE_USER, command.getKeys(), command.getArgList(),
+                                    RedisElementWriter.from(RedisSerializer.byteArray()), RedisElementReader.from(RedisSerializer.string()))
+                            .next();
+                })
+                .flatMap(result -> {
+                    if(UserScripts.EMAIL_CHANGED.equals(result)) {
+                        return save(user, isNew);
+                    }
+                    if(UserScripts.SAVE_CONFLICT.equals(result)) {
+                        if(isNew) {
+                            user.setId(null);
+                        }
+                        return Mono.error(new EmailConflictException(user.getEmail()));
+                    }
+                    return Mono.just(user);
+                });
+    }
+
+    public Mono<Boolean> deleteById(Long id) {
+        return findStoredEmail(id)
+                .flatMap(email -> redisTemplate.execute(UserScripts.DELETE_USER, UserScripts.deleteKeys(id, email, emailIndex), UserScripts.deleteArgs(id, email))
+                        .next())
+                .flatMap(result -> UserScripts.EMAIL_CHANGED.equals(result) ? deleteById(id) : Mono.just("1".equals(result)));
+    }
+
+    // Email field of the stored user, '' for a new or missing one
+    private Mono<String> findStoredEmail(Long id) {
+        if(id == null) {
+            return Mono.just("");
+        }
+        return redisTemplate.<String, String>opsForHash().get(UserScripts.userKey(id), UserStorageConverters.EMAIL_FIELD)
+                .defaultIfEmpty("");
+    }
+
+    private User toUser(Long id, Map<byte[], byte[]> fields) {
+        RedisData data = new RedisData(Bucket.newBucketFromRawMap(fields));
+        data.setId(String.valueOf(id));
+        data.setKeyspace(User.KEYSPACE);
+        return converter.read(User.class, data);
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/*
+ * Versioned binary form of a user's profile. A version byte is followed by the first and last name
+ * as length-prefixed UTF-8 and the roles: version 2 stores them as the varint role mask of RoleCatalog,
+ * version 1 as eight byte role ids, still written for roles that have no mask bit. Lengths, the role
+ * count and the mask presence are stored plus one so that zero means null. The id, email and password
+ * hash are kept outside the blob.
+ */
+public final class UserBinaryCodec {
+
+    public static final byte VERSION = 2;
+    public static final byte VERSION_ROLE_IDS = 1;
+
+    private UserBinaryCodec() {
+    }
+
+    public static byte[] encode(User user) {
+        byte[] firstName = bytes(user.getFirstName());
+        byte[] lastName = bytes(user.getLastName());
+        Set<Role> roles = user.getRoles();
+        Long roleMask = roles != null ? roleMask(roles) : null;
+        if(roles != null && roleMask == null) {
+            return encodeRoleIds(firstName, lastName, roles);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + size(firstName) + size(lastName) + 1 + (roleMask != null ? varLongSize(roleMask) : 0));
+        buffer.put(VERSION);
+        putBytes(buffer, firstName);
+        putBytes(buffer, lastName);
+        if(roleMask != null) {
+            buffer.put((byte) 1);
+            putVarLong(buffer, roleMask);
+        } else {
+            buffer.put((byte) 0);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] encodeRoleIds(byte[] firstName, byte[] lastName, Set<Role> roles) {
+        int roleCount = roles.size() + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(1 + size(firstName) + size(lastName)
+                + varIntSize(roleCount) + roles.size() * Long.BYTES);
+        buffer.put(VERSION_ROLE_IDS);
+        putBytes(buffer, firstName);
+        putBytes(buffer, lastName);
+        putVarInt(buffer, roleCount);
+        for(Role role : roles) {
+            buffer.putLong(role.getId());
+        }
+        return buffer.array();
+    }
+
+    /*
+     * Role ids are turned into roles by the role resolver, an id it does not know keeps a role without a name.
+     * Masks are turned into roles by the mask resolver, which returns null for a bit no role owns.
+     */
+    public static User decode(byte[] blob, Function<Long, Role> roleResolver, LongFunction<Set<Role>> maskResolver) {
+        ByteBuffer buffer = ByteBuffer.wrap(blob);
+        byte version = buffer.get();
+        if(version != VERSION && version != VERSION_ROLE_IDS) {
+            throw new IllegalArgumentException("Unsupported user encoding version " + version);
+        }
+        User user = new User();
+        user.setFirstName(getString(buffer));
+        user.setLastName(getString(buffer));
+        if(version == VERSION) {
+            if(buffer.get() != 0) {
+                long roleMask = getVarLong(buffer);
+                Set<Role> roles = maskResolver.apply(roleMask);
+                if(roles == null) {
+                    throw new IllegalStateException("Unknown role bits in role mask " + Long.toBinaryString(roleMask));
+                }
+                user.setRoles(roles);
+            }
+            return user;
+        }
+        int roleCount = getVarInt(buffer);
+        if(roleCount > 0) {
+            Set<Role> roles = new HashSet<>();
+            for(int i = 1; i < roleCount; i++) {
+                long roleId = buffer.getLong();
+                Role role = roleResolver.apply(roleId);
+                roles.add(role != null ? role : new Role(roleId, null));
+            }
+            user.setRoles(roles);
+        }
+        return user;
+    }
+
+    // Null when a role has no mask bit
+    static Long roleMask(Set<Role> roles) {
+        long mask = 0;
+        for(Role role : roles) {
+            if(role.getBit() == null) {
+                return null;
+            }
+            mask |= 1L << role.getBit();
+        }
+        return mask;
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int size(byte[] value) {
+        return value != null ? varIntSize(value.length + 1) + value.length : 1;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        if(value != null) {
+            putVarInt(buffer, value.length + 1);
+            buffer.put(value);
+        } else {
+            putVarInt(buffer, 0);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = getVarInt(buffer) - 1;
+        String value = null;
+        if(length >= 0) {
+            value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        return value;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            value |= (next & 0x7F) << shift;
+            shift += 7;
+        } while((next & 0x80) != 0);
+        return value;
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            value |= (long) (next & 0x7F) << shift;
+            shift += 7;
+        } while((next & 0x80) != 0);
+        return value;
+    }
+
+}
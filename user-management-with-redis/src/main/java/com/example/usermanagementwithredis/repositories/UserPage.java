@@ -0,0 +1,27 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class UserPage {
+    public static final String FIRST_CURSOR = "0";
+
+    private final List<User> users;
+    private final String nextCursor;
+
+    // A cursor handed out in X-Next-Cursor, "0" starts from the beginning
+    public static boolean isCursor(String cursor) {
+        return UserScan.isCursor(cursor);
+    }
+
+    public boolean isLast() {
+        return FIRST_CURSOR.equals(nextCursor);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.convert.ReferenceResolver;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+
+/*
+ * Mapping converter that reads users with UserStorageConverters.UserReader, everything else as usual.
+ * Registered as a reading converter instead, the reader would get the hash key assigned to the
+ * Long id without any conversion.
+ */
+public class UserRedisConverter extends MappingRedisConverter {
+
+    private final UserStorageConverters.UserReader userReader;
+
+    public UserRedisConverter(RedisMappingContext mappingContext, ReferenceResolver referenceResolver, UserStorageConverters.UserReader userReader) {
+        super(mappingContext, null, referenceResolver);
+        this.userReader = userReader;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> R read(Class<R> type, RedisData source) {
+        if(type != User.class || source.getBucket().isEmpty()) {
+            return super.read(type, source);
+        }
+        User user = userReader.convert(source.getBucket().asMap());
+        if(source.getId() != null) {
+            user.setId(Long.valueOf(source.getId()));
+        }
+        return (R) user;
+    }
+
+}
@@ -7,8 +7,23 @@ import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends CrudRepository<User, Long> {
+public interface UserRepository extends CrudRepository<User, Long>, UserRepositoryCustom {
 
+    // Looked up in the email index by UserRepositoryImpl
+    @Override
     Optional<User> findByEmail(String email);
 
+    // Redeclared so calls resolve to the single round trip writes in UserRepositoryImpl
+    @Override
+    <S extends User> S save(S user);
+
+    @Override
+    <S extends User> Iterable<S> saveAll(Iterable<S> users);
+
+    @Override
+    void delete(User user);
+
+    @Override
+    void deleteById(Long id);
+
 }
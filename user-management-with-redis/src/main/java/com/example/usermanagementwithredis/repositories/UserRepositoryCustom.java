@@ -0,0 +1,48 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+public interface UserRepositoryCustom {
+
+    Optional<User> findByEmail(String email);
+
+    UserPage findPage(String cursor, int count);
+
+    UserPage search(String field, String prefix, String after, int count);
+
+    Long findVersion(Long id);
+
+    byte[] findJson(Long id);
+
+    void saveJson(Long id, byte[] json, Duration ttl);
+
+    <S extends User> S save(S user);
+
+    <S extends User> Iterable<S> saveAll(Iterable<S> users);
+
+    void delete(User user);
+
+    void deleteById(Long id);
+
+    boolean isEmailClaimed(String email);
+
+    Set<String> findExistingEmails(Collection<String> emails);
+
+    boolean isEmailIndexOutdated();
+
+    long rebuildEmailIndex();
+
+    boolean isSearchIndexOutdated();
+
+    long rebuildSearchIndex();
+
+    boolean isStorageOutdated();
+
+    long rewriteStorage();
+
+}
@@ -0,0 +1,496 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.keyvalue.core.KeyValueOperations;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+
+    // Index sets and tracking sets written by Spring Data while the email and id were @Indexed
+    private static final List<String> LEGACY_INDEX_PATTERNS = List.of(User.KEYSPACE + ":email:*", User.KEYSPACE + ":id:*", User.KEYSPACE + ":*:idx");
+
+    private final StringRedisTemplate redisTemplate;
+    private final KeyValueOperations keyValueOperations;
+    private final RedisConverter converter;
+    private final EmailIndex emailIndex;
+    private final String storageLayout;
+    private final SecureRandom idGenerator = new SecureRandom();
+
+    @Autowired
+    public UserRepositoryImpl(StringRedisTemplate redisTemplate, KeyValueOperations keyValueOperations, RedisConverter converter, EmailIndex emailIndex,
+                              @Value("${users.storage.format}") String storageFormat) {
+        this.redisTemplate = redisTemplate;
+        this.keyValueOperations = keyValueOperations;
+        this.converter = converter;
+        this.emailIndex = emailIndex;
+        this.storageLayout = storageFormat + ":" + UserStorageConverters.LAYOUT_REVISION;
+    }
+
+    // One HGET on the email index and one HGETALL on the user hash
+    @Override
+    public Optional<User> findByEmail(String email) {
+        Object id = redisTemplate.opsForHash().get(emailIndex.keyFor(email), email);
+        return id != null ? keyValueOperations.findById(Long.valueOf((String) id), User.class) : Optional.empty();
+    }
+
+    // Null for a missing user and for one not saved since versions were introduced
+    @Override
+    public Long findVersion(Long id) {
+        Object version = redisTemplate.opsForHash().get(UserScripts.VERSIONS_KEY, String.valueOf(id));
+        return version != null ? Long.valueOf((String) version) : null;
+    }
+
+    // Cached response body of the user, dropped by the save and delete scripts
+    @Override
+    public byte[] findJson(Long id) {
+        byte[] key = UserScripts.jsonKey(id).getBytes(StandardCharsets.UTF_8);
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key));
+    }
+
+    @Override
+    public void saveJson(Long id, byte[] json, Duration ttl) {
+        byte[] key = UserScripts.jsonKey(id).getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(key, json, Expiration.from(ttl), RedisStringCommands.SetOption.upsert()));
+    }
+
+    // At most count users, from as many SSCAN steps as it takes to fill the page
+    @Override
+    public UserPage findPage(String cursor, int count) {
+        UserScan scan = redisTemplate.execute((RedisCallback<UserScan>) connection -> UserScan.page(connection.getNativeConnection(), cursor, count));
+        return new UserPage(findAllByIds(scan.getIds()), scan.getNextCursor());
+    }
+
+    // Users whose indexed field starts with the prefix, in term order. The next cursor is null on the last page
+    @Override
+    @SuppressWarnings("unchecked")
+    public UserPage search(String field, String prefix, String after, int count) {
+        List<String> members = redisTemplate.execute(UserScripts.SEARCH_USERS, List.of(UserSearchIndex.keyFor(field)), UserScripts.searchArgs(prefix, after, count).toArray());
+        String nextCursor = null;
+        if(members.size() > count) {
+            members = members.subList(0, count);
+            nextCursor = UserSearchIndex.encodeCursor(members.get(count - 1));
+        }
+        List<String> ids = members.stream().map(member -> String.valueOf(UserSearchIndex.idOf(member))).collect(Collectors.toList());
+        return new UserPage(findAllByIds(ids), nextCursor);
+    }
+
+    /*
+     * Writes the same hash and keyspace set as the key-value adapter, but in a single script call
+     * instead of a command per step. The same call claims the email in the email index, so a user
+     * whose email belongs to someone else is not written. The email the user had is read first, so its
+     * index shard can be passed to the script, which sends the save back when it changed meanwhile.
+     * Role references are stored as keys only, so they need no lookup here.
+     */
+    @Override
+    public <S extends User> S save(S user) {
+        boolean isNew = user.getId() == null;
+        String result;
+        do {
+            UserSaveCommand command = UserSaveCommand.prepare(user, findStoredEmail(user.getId()), converter, emailIndex, idGenerator);
+            result = redisTemplate.execute(UserScripts.SAVE_USER, RedisSerializer.byteArray(), RedisSerializer.string(), command.getKeys(), command.getArgs());
+        } while(UserScripts.EMAIL_CHANGED.equals(result));
+        if(UserScripts.SAVE_CONFLICT.equals(result)) {
+            if(isNew) {
+                user.setId(null);
+            }
+            throw new EmailConflictException(user.getEmail());
+        }
+        return user;
+    }
+
+    /*
+     * All the saves of the batch go out in one pipeline, loading the script first so EVALSHA cannot miss.
+     * The raw execute form is used because the Jedis connection refuses scripting commands while pipelining.
+     * The emails of the users already stored are read in one pipeline before, a save the script sends back
+     * because one of them changed meanwhile is repeated on its own.
+     * Only the stored users are returned, the ones that lost their email claim are left out.
+     */
+    @Override
+    public <S extends User> Iterable<S> saveAll(Iterable<S> users) {
+        List<S> candidates = new ArrayList<>();
+        List<Boolean> isNew = new ArrayList<>();
+        users.forEach(user -> {
+            candidates.add(user);
+            isNew.add(user.getId() == null);
+        });
+        List<String> storedEmails = findStoredEmails(candidates);
+        List<UserSaveCommand> commands = new ArrayList<>(candidates.size());
+        for(int i = 0; i < candidates.size(); i++) {
+            commands.add(UserSaveCommand.prepare(candidates.get(i), storedEmails.get(i), converter, emailIndex, idGenerator));
+        }
+        List<S> saved = new ArrayList<>(candidates.size());
+        if(!commands.isEmpty()) {
+            byte[] script = UserScripts.SAVE_USER.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+            byte[] sha = UserScripts.SAVE_USER.getSha1().getBytes(StandardCharsets.UTF_8);
+            List<Object> results;
+            RedisPipelineException pipelineException = null;
+            try {
+                results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    connection.execute("SCRIPT", "LOAD".getBytes(StandardCharsets.UTF_8), script);
+                    for(UserSaveCommand command : commands) {
+                        connection.execute("EVALSHA", command.evalShaArgs(sha));
+                    }
+                    return null;
+                });
+            } catch (RedisPipelineException ex) {
+                // The replies are still there, with the error of each failed command in its place
+                results = ex.getPipelineResult();
+                pipelineException = ex;
+            }
+            List<User> failed = new ArrayList<>();
+            for(int i = 0; i < candidates.size(); i++) {
+                // The first reply belongs to SCRIPT LOAD
+                Object result = results.get(i + 1);
+                if(UserScripts.EMAIL_CHANGED.equals(result)) {
+                    // Repeated on its own, it either stores the user or loses the email claim
+                    try {
+                        save(candidates.get(i));
+                    } catch (EmailConflictException ex) {
+                        result = UserScripts.SAVE_CONFLICT;
+                    }
+                }
+                if(result instanceof Throwable || UserScripts.SAVE_CONFLICT.equals(result)) {
+                    if(isNew.get(i)) {
+                        candidates.get(i).setId(null);
+                    }
+                    if(result instanceof Throwable) {
+                        failed.add(candidates.get(i));
+                    }
+                } else {
+                    saved.add(candidates.get(i));
+                }
+            }
+            if(pipelineException != null) {
+                throw new PartialSaveException(failed, pipelineException);
+            }
+        }
+        return saved;
+    }
+
+    @Override
+    public void delete(User user) {
+        deleteById(user.getId());
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        String result;
+        do {
+            String email = findStoredEmail(id);
+            result = redisTemplate.execute(UserScripts.DELETE_USER, UserScripts.deleteKeys(id, email, emailIndex), UserScripts.deleteArgs(id, email).toArray());
+        } while(UserScripts.EMAIL_CHANGED.equals(result));
+    }
+
+    // Email field of the stored user, '' for a new or missing one
+    private String findStoredEmail(Long id) {
+        if(id == null) {
+            return "";
+        }
+        Object email = redisTemplate.opsForHash().get(UserScripts.userKey(id), UserStorageConverters.EMAIL_FIELD);
+        return email != null ? (String) email : "";
+    }
+
+    // Same as findStoredEmail for each user, with one pipelined HGET per user already stored
+    private List<String> findStoredEmails(List<? extends User> users) {
+        List<Long> ids = users.stream().map(User::getId).filter(Objects::nonNull).collect(Collectors.toList());
+        List<String> emails = ids.isEmpty() ? List.of() : findEmailFields(ids.stream().map(String::valueOf).collect(Collectors.toList()));
+        List<String> stored = new ArrayList<>(users.size());
+        int i = 0;
+        for(User user : users) {
+            String email = user.getId() != null ? emails.get(i++) : null;
+            stored.add(email != null ? email : "");
+        }
+        return stored;
+    }
+
+    // Email field of each user hash, null where there is none
+    private List<String> findEmailFields(List<String> ids) {
+        byte[] field = UserStorageConverters.EMAIL_FIELD.getBytes(StandardCharsets.UTF_8);
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for(String id : ids) {
+                connection.hashCommands().hGet(UserScripts.userKey(id).getBytes(StandardCharsets.UTF_8), field);
+            }
+            return null;
+        }).stream().map(email -> (String) email).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean isEmailClaimed(String email) {
+        return redisTemplate.opsForHash().hasKey(emailIndex.keyFor(email), email);
+    }
+
+    // One HMGET per shard holding any of the emails, all in one pipeline
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> findExistingEmails(Collection<String> emails) {
+        Map<String, List<String>> byShard = emails.stream().collect(Collectors.groupingBy(emailIndex::keyFor, LinkedHashMap::new, Collectors.toList()));
+        List<Object> owners = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for(Map.Entry<String, List<String>> shard : byShard.entrySet()) {
+                connection.hashCommands().hMGet(shard.getKey().getBytes(StandardCharsets.UTF_8),
+                        shard.getValue().stream().map(email -> email.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new));
+            }
+            return null;
+        });
+        Set<String> existing = new HashSet<>();
+        int i = 0;
+        for(List<String> shardEmails : byShard.values()) {
+            List<Object> shardOwners = (List<Object>) owners.get(i++);
+            for(int j = 0; j < shardEmails.size(); j++) {
+                if(shardOwners.get(j) != null) {
+                    existing.add(shardEmails.get(j));
+                }
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean isEmailIndexOutdated() {
+        return !String.valueOf(emailIndex.getShards()).equals(redisTemplate.opsForValue().get(EmailIndex.LAYOUT_KEY));
+    }
+
+    /*
+     * Indexes the email of every stored user for the configured shard count, then drops the shards
+     * of the previous count. An index without a recorded layout predates sharding: it is the single
+     * hash, and the per-value index sets Spring Data kept for the email and id are removed with it.
+     * The emails of each scan step are read in one pipeline and indexed by one script call. Entries already
+     * present are kept, so the save and delete scripts may run meanwhile, but nodes still configured for
+     * the previous count would keep using the dropped shards.
+     */
+    @Override
+    public long rebuildEmailIndex() {
+        String previousLayout = redisTemplate.opsForValue().get(EmailIndex.LAYOUT_KEY);
+        long indexed = 0;
+        String cursor = UserPage.FIRST_CURSOR;
+        do {
+            UserScan.Step step = scanStep(cursor);
+            List<String> ids = step.getIds();
+            List<String> emails = ids.isEmpty() ? List.of() : findEmailFields(ids);
+            List<String> userKeys = new ArrayList<>();
+            List<String> shardKeys = new ArrayList<>();
+            List<String> found = new ArrayList<>();
+            List<String> foundEmails = new ArrayList<>();
+            for(int i = 0; i < ids.size(); i++) {
+                if(emails.get(i) != null) {
+                    userKeys.add(UserScripts.userKey(ids.get(i)));
+                    shardKeys.add(emailIndex.keyFor(emails.get(i)));
+                    found.add(ids.get(i));
+                    foundEmails.add(emails.get(i));
+                }
+            }
+            if(!found.isEmpty()) {
+                userKeys.addAll(shardKeys);
+                found.addAll(foundEmails);
+                indexed += Long.parseLong(redisTemplate.execute(UserScripts.INDEX_EMAILS, userKeys, found.toArray()));
+            }
+            cursor = step.getCursor();
+        } while(!UserPage.FIRST_CURSOR.equals(cursor));
+
+        int previousShards = previousLayout != null ? Integer.parseInt(previousLayout) : 1;
+        if(previousShards != emailIndex.getShards()) {
+            redisTemplate.unlink(EmailIndex.keys(previousShards));
+        }
+        if(previousLayout == null) {
+            for(String pattern : LEGACY_INDEX_PATTERNS) {
+                unlinkMatching(pattern);
+            }
+        }
+        redisTemplate.opsForValue().set(EmailIndex.LAYOUT_KEY, String.valueOf(emailIndex.getShards()));
+        return indexed;
+    }
+
+    @Override
+    public boolean isSearchIndexOutdated() {
+        return !UserSearchIndex.VERSION.equals(redisTemplate.opsForValue().get(UserSearchIndex.VERSION_KEY));
+    }
+
+    /*
+     * Indexes the users stored before the search index existed. Users are read through the converter,
+     * so the names in the binary layout are found too. A user that already has search terms was saved
+     * by the scripts since and is left as it is.
+     */
+    @Override
+    public long rebuildSearchIndex() {
+        long indexed = 0;
+        UserPage page;
+        String cursor = UserPage.FIRST_CURSOR;
+        do {
+            page = findPage(cursor, 500);
+            List<String> keys = new ArrayList<>();
+            keys.add(UserSearchIndex.KEY);
+            keys.addAll(UserSearchIndex.keys());
+            List<String> args = new ArrayList<>();
+            for(User user : page.getUsers()) {
+                keys.add(UserScripts.userKey(user.getId()));
+                args.add(String.valueOf(user.getId()));
+                args.addAll(UserSearchIndex.terms(user));
+            }
+            if(!args.isEmpty()) {
+                indexed += Long.parseLong(redisTemplate.execute(UserScripts.INDEX_SEARCH, keys, args.toArray()));
+            }
+            cursor = page.getNextCursor();
+        } while(!page.isLast());
+        redisTemplate.opsForValue().set(UserSearchIndex.VERSION_KEY, UserSearchIndex.VERSION);
+        return indexed;
+    }
+
+    private void unlinkMatching(String pattern) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(1000).build();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            List<byte[]> batch = new ArrayList<>();
+            try(Cursor<byte[]> keys = connection.scan(options)) {
+                while(keys.hasNext()) {
+                    batch.add(keys.next());
+                    if(batch.size() == 500 || !keys.hasNext()) {
+                        connection.keyCommands().unlink(batch.toArray(new byte[0][]));
+                        batch.clear();
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isStorageOutdated() {
+        return !storageLayout.equals(redisTemplate.opsForValue().get(UserStorageConverters.LAYOUT_KEY));
+    }
+
+    /*
+     * Rewrites the users whose hash differs from what the converter writes now, after
+     * users.storage.format or the layout of a format changed. A hash is only replaced if it still holds what was read,
+     * a user saved in the meantime already has the new layout. The email index stays as it is.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public long rewriteStorage() {
+        byte[] script = UserScripts.REWRITE_USER.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        byte[] sha = UserScripts.REWRITE_USER.getSha1().getBytes(StandardCharsets.UTF_8);
+        long rewritten = 0;
+        String cursor = UserPage.FIRST_CURSOR;
+        do {
+            UserScan.Step step = scanStep(cursor);
+            List<String> ids = step.getIds();
+            List<Object> hashes = findHashes(ids);
+
+            List<byte[][]> rewrites = new ArrayList<>();
+            for(int i = 0; i < ids.size(); i++) {
+                Map<byte[], byte[]> stored = (Map<byte[], byte[]>) hashes.get(i);
+                // Deleted since the scan step
+                if(stored == null || stored.isEmpty()) {
+                    continue;
+                }
+                RedisData written = new RedisData();
+                converter.write(read(ids.get(i), stored), written);
+                Map<byte[], byte[]> target = written.getBucket().rawMap();
+                if(!sameFields(stored, target)) {
+                    rewrites.add(rewriteArgs(sha, UserScripts.userKey(ids.get(i)), stored, target));
+                }
+            }
+            if(!rewrites.isEmpty()) {
+                List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    connection.execute("SCRIPT", "LOAD".getBytes(StandardCharsets.UTF_8), script);
+                    for(byte[][] args : rewrites) {
+                        connection.execute("EVALSHA", args);
+                    }
+                    return null;
+                });
+                // The first reply belongs to SCRIPT LOAD
+                rewritten += results.stream().skip(1).filter("1"::equals).count();
+            }
+            cursor = step.getCursor();
+        } while(!UserPage.FIRST_CURSOR.equals(cursor));
+        redisTemplate.opsForValue().set(UserStorageConverters.LAYOUT_KEY, storageLayout);
+        return rewritten;
+    }
+
+    // Whole SSCAN steps, the startup jobs go through every id and need no page bounds
+    private UserScan.Step scanStep(String cursor) {
+        return redisTemplate.execute((RedisCallback<UserScan.Step>) connection -> UserScan.step(connection.getNativeConnection(), cursor, 500));
+    }
+
+    // One pipelined HGETALL per id instead of a round trip each, a user deleted since its id was read is left out
+    @SuppressWarnings("unchecked")
+    private List<User> findAllByIds(List<String> ids) {
+        List<Object> hashes = findHashes(ids);
+        List<User> users = new ArrayList<>(ids.size());
+        for(int i = 0; i < ids.size(); i++) {
+            Map<byte[], byte[]> stored = (Map<byte[], byte[]>) hashes.get(i);
+            if(stored != null && !stored.isEmpty()) {
+                users.add(read(ids.get(i), stored));
+            }
+        }
+        return users;
+    }
+
+    // Pipelined by hand, executePipelined would decode the hashes with the string serializers
+    private List<Object> findHashes(List<String> ids) {
+        if(ids.isEmpty()) {
+            return List.of();
+        }
+        return redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            for(String id : ids) {
+                connection.hashCommands().hGetAll(UserScripts.userKey(id).getBytes(StandardCharsets.UTF_8));
+            }
+            return connection.closePipeline();
+        });
+    }
+
+    // Same conversion as the key-value adapter applies to a hash it read
+    private User read(String id, Map<byte[], byte[]> stored) {
+        RedisData data = new RedisData(Bucket.newBucketFromRawMap(stored));
+        data.setId(id);
+        data.setKeyspace(User.KEYSPACE);
+        return converter.read(User.class, data);
+    }
+
+    private static boolean sameFields(Map<byte[], byte[]> stored, Map<byte[], byte[]> target) {
+        if(stored.size() != target.size()) {
+            return false;
+        }
+        Map<String, byte[]> storedByName = new HashMap<>();
+        stored.forEach((field, value) -> storedByName.put(new String(field, StandardCharsets.UTF_8), value));
+        for(Map.Entry<byte[], byte[]> field : target.entrySet()) {
+            if(!Arrays.equals(storedByName.get(new String(field.getKey(), StandardCharsets.UTF_8)), field.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[][] rewriteArgs(byte[] sha, String key, Map<byte[], byte[]> stored, Map<byte[], byte[]> target) {
+        byte[][] args = new byte[4 + (stored.size() + target.size()) * 2][];
+        int i = 0;
+        args[i++] = sha;
+        args[i++] = "1".getBytes(StandardCharsets.UTF_8);
+        args[i++] = key.getBytes(StandardCharsets.UTF_8);
+        args[i++] = String.valueOf(stored.size()).getBytes(StandardCharsets.UTF_8);
+        for(Map<byte[], byte[]> fields : List.of(stored, target)) {
+            for(Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+                args[i++] = field.getKey();
+                args[i++] = field.getValue();
+            }
+        }
+        return args;
+    }
+
+}
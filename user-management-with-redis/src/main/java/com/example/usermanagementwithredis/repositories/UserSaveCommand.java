@@ -0,0 +1,84 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.data.redis.core.convert.RedisConverter;
+import org.springframework.data.redis.core.convert.RedisData;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Keys and arguments of one save-user.lua call, built from the same RedisData
+ * the key-value adapter would write for the user.
+ */
+final class UserSaveCommand {
+
+    private final List<String> keys;
+    private final Object[] args;
+
+    private UserSaveCommand(List<String> keys, Object[] args) {
+        this.keys = keys;
+        this.args = args;
+    }
+
+    // previousEmail is the email read from the user hash beforehand, '' when there is none
+    static UserSaveCommand prepare(User user, String previousEmail, RedisConverter converter, EmailIndex emailIndex, SecureRandom idGenerator) {
+        if(user.getId() == null) {
+            // Same generator the key-value template uses for Long identifiers
+            user.setId(idGenerator.nextLong());
+        }
+        RedisData data = new RedisData();
+        converter.write(user, data);
+
+        String id = data.getId();
+        List<String> keys = new ArrayList<>(List.of(UserScripts.userKey(id), data.getKeyspace(), emailIndex.keyFor(user.getEmail()), emailIndex.keyFor(previousEmail),
+                UserScripts.VERSIONS_KEY, UserScripts.jsonKey(id), UserSearchIndex.KEY));
+        keys.addAll(UserSearchIndex.keys());
+
+        Map<byte[], byte[]> fields = data.getBucket().rawMap();
+        Object[] args = new Object[6 + fields.size() * 2];
+        args[0] = id.getBytes(StandardCharsets.UTF_8);
+        args[1] = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        args[2] = previousEmail.getBytes(StandardCharsets.UTF_8);
+        int i = 3;
+        for(String term : UserSearchIndex.terms(user)) {
+            args[i++] = term.getBytes(StandardCharsets.UTF_8);
+        }
+        for(Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            args[i++] = field.getKey();
+            args[i++] = field.getValue();
+        }
+        return new UserSaveCommand(keys, args);
+    }
+
+    List<String> getKeys() {
+        return keys;
+    }
+
+    Object[] getArgs() {
+        return args;
+    }
+
+    List<Object> getArgList() {
+        return Arrays.asList(args);
+    }
+
+    byte[][] evalShaArgs(byte[] sha) {
+        byte[][] keysAndArgs = new byte[2 + keys.size() + args.length][];
+        int i = 0;
+        keysAndArgs[i++] = sha;
+        keysAndArgs[i++] = String.valueOf(keys.size()).getBytes(StandardCharsets.UTF_8);
+        for(String key : keys) {
+            keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        for(Object arg : args) {
+            keysAndArgs[i++] = (byte[]) arg;
+        }
+        return keysAndArgs;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+ * One page of users collected from SSCAN steps over the users keyspace set. COUNT is only a hint, so
+ * steps are added until the page is full and the step that overflows it is cut: the cursor handed out
+ * is then "<step cursor>.<last id taken>", and the next page runs that step again and continues after
+ * the id. If the id is gone from the step by then, the whole step is returned again, so like SSCAN
+ * itself a user may be listed twice but one stored throughout is never skipped.
+ * Spring Data only offers SSCAN as an iteration from the start of the set, so steps go through the driver.
+ */
+final class UserScan {
+
+    private static final Pattern CURSOR = Pattern.compile("\\d+(\\.-?\\d+)?");
+    private static final byte[] KEY = User.KEYSPACE.getBytes(StandardCharsets.UTF_8);
+
+    private final int count;
+    private final List<String> ids;
+    private String position;
+    private String after;
+    private String nextCursor;
+
+    private UserScan(String cursor, int count) {
+        int separator = cursor.indexOf('.');
+        this.count = count;
+        this.ids = new ArrayList<>(count);
+        this.position = separator < 0 ? cursor : cursor.substring(0, separator);
+        this.after = separator < 0 ? null : cursor.substring(separator + 1);
+    }
+
+    static boolean isCursor(String cursor) {
+        return cursor != null && CURSOR.matcher(cursor).matches();
+    }
+
+    // Runs the steps of one page on a blocking connection
+    static UserScan page(Object nativeConnection, String cursor, int count) {
+        UserScan scan = new UserScan(cursor, count);
+        boolean more;
+        do {
+            more = scan.accept(step(nativeConnection, scan.position, count));
+        } while(more);
+        return scan;
+    }
+
+    // Same as page, without blocking; reactive mode always runs on Lettuce
+    static Mono<UserScan> pageAsync(Object nativeConnection, String cursor, int count) {
+        UserScan scan = new UserScan(cursor, count);
+        return stepAsync(nativeConnection, scan.position, count)
+                .expand(step -> scan.accept(step) ? stepAsync(nativeConnection, scan.position, count) : Mono.empty())
+                .then(Mono.just(scan));
+    }
+
+    // A single untrimmed step, for the jobs that walk the whole set
+    static Step step(Object nativeConnection, String position, int count) {
+        if(nativeConnection instanceof BinaryJedis) {
+            ScanResult<byte[]> result = ((BinaryJedis) nativeConnection).sscan(KEY, position.getBytes(StandardCharsets.UTF_8), new ScanParams().count(count));
+            return new Step(result.getCursor(), result.getResult().stream().map(String::new).collect(Collectors.toList()));
+        }
+        return stepAsync(nativeConnection, position, count).block();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Mono<Step> stepAsync(Object nativeConnection, String position, int count) {
+        CompletableFuture<ValueScanCursor<byte[]>> future = ((RedisClusterAsyncCommands<byte[], byte[]>) nativeConnection)
+                .sscan(KEY, ScanCursor.of(position), ScanArgs.Builder.limit(count))
+                .toCompletableFuture();
+        return Mono.fromFuture(future)
+                .map(result -> new Step(result.getCursor(), result.getValues().stream().map(String::new).collect(Collectors.toList())));
+    }
+
+    // Takes in the next step, true while the page has room and the set has more steps
+    private boolean accept(Step step) {
+        List<String> stepIds = step.getIds();
+        if(after != null) {
+            stepIds = stepIds.subList(stepIds.indexOf(after) + 1, stepIds.size());
+            after = null;
+        }
+        int room = count - ids.size();
+        if(stepIds.size() > room) {
+            ids.addAll(stepIds.subList(0, room));
+            nextCursor = position + "." + ids.get(ids.size() - 1);
+            return false;
+        }
+        ids.addAll(stepIds);
+        position = step.getCursor();
+        nextCursor = position;
+        return ids.size() < count && !UserPage.FIRST_CURSOR.equals(position);
+    }
+
+    List<String> getIds() {
+        return ids;
+    }
+
+    String getNextCursor() {
+        return nextCursor;
+    }
+
+    static final class Step {
+        private final String cursor;
+        private final List<String> ids;
+
+        Step(String cursor, List<String> ids) {
+            this.cursor = cursor;
+            this.ids = ids;
+        }
+
+        String getCursor() {
+            return cursor;
+        }
+
+        List<String> getIds() {
+            return ids;
+        }
+    }
+
+}
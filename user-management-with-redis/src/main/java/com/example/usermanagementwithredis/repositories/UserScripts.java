@@ -0,0 +1,52 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Server-side scripts and keys shared by the blocking and the reactive user repositories.
+ */
+final class UserScripts {
+
+    static final RedisScript<String> SAVE_USER = RedisScript.of(new ClassPathResource("scripts/save-user.lua"), String.class);
+    static final RedisScript<String> DELETE_USER = RedisScript.of(new ClassPathResource("scripts/delete-user.lua"), String.class);
+    static final RedisScript<String> REWRITE_USER = RedisScript.of(new ClassPathResource("scripts/rewrite-user.lua"), String.class);
+    static final RedisScript<String> INDEX_EMAILS = RedisScript.of(new ClassPathResource("scripts/index-emails.lua"), String.class);
+    static final RedisScript<List> SEARCH_USERS = RedisScript.of(new ClassPathResource("scripts/search-users.lua"), List.class);
+    static final RedisScript<String> INDEX_SEARCH = RedisScript.of(new ClassPathResource("scripts/index-search.lua"), String.class);
+    static final String SAVE_CONFLICT = "conflict";
+    // The save and delete scripts answer this when the email read before the call was changed meanwhile
+    static final String EMAIL_CHANGED = "changed";
+    // Per-user counter bumped by every save, users stored before it existed have no entry until their next save
+    static final String VERSIONS_KEY = User.KEYSPACE + ":versions";
+
+    private UserScripts() {
+    }
+
+    static String userKey(Object id) {
+        return User.KEYSPACE + ":" + id;
+    }
+
+    static String jsonKey(Object id) {
+        return User.KEYSPACE + ":json:" + id;
+    }
+
+    static List<String> deleteKeys(Long id, String email, EmailIndex emailIndex) {
+        List<String> keys = new ArrayList<>(List.of(userKey(id), User.KEYSPACE, emailIndex.keyFor(email), VERSIONS_KEY, jsonKey(id), UserSearchIndex.KEY));
+        keys.addAll(UserSearchIndex.keys());
+        return keys;
+    }
+
+    static List<String> searchArgs(String prefix, String after, int count) {
+        return List.of(UserSearchIndex.term(prefix), after != null ? after : "", String.valueOf(count));
+    }
+
+    static List<String> deleteArgs(Long id, String email) {
+        return List.of(String.valueOf(id), email);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/*
+ * Prefix search over the first name, last name and email of the users. Each field has a sorted set
+ * users:search:<field> whose members are the lowercased term, a NUL byte and the user id, all scored 0,
+ * so ZRANGEBYLEX returns the users with a given prefix in term order. The users:search hash keeps the
+ * terms each user is indexed under, so the save and delete scripts can drop the old members.
+ * Page cursors are the last member returned, base64url encoded.
+ */
+public final class UserSearchIndex {
+
+    // In the order the scripts expect the terms
+    public static final List<String> FIELDS = List.of("firstName", "lastName", "email");
+
+    static final String KEY = User.KEYSPACE + ":search";
+    // Set once every user stored before the index existed has been indexed
+    static final String VERSION_KEY = KEY + ":version";
+    static final String VERSION = "1";
+
+    private static final char SEPARATOR = '\0';
+
+    private UserSearchIndex() {
+    }
+
+    static String keyFor(String field) {
+        return KEY + ":" + field;
+    }
+
+    // Sorted sets of all the fields, in the order of FIELDS
+    static List<String> keys() {
+        return FIELDS.stream().map(UserSearchIndex::keyFor).collect(Collectors.toList());
+    }
+
+    static String term(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+
+    static List<String> terms(User user) {
+        return List.of(term(user.getFirstName()), term(user.getLastName()), term(user.getEmail()));
+    }
+
+    static Long idOf(String member) {
+        return Long.valueOf(member.substring(member.lastIndexOf(SEPARATOR) + 1));
+    }
+
+    static String encodeCursor(String member) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(member.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The member a cursor continues after, null when the cursor was not issued by this index
+    public static String decodeCursor(String cursor) {
+        try {
+            String member = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return member.indexOf(SEPARATOR) >= 0 ? member : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+}
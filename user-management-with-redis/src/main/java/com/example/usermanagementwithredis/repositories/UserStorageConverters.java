@@ -0,0 +1,167 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/*
+ * Conversions between users and their Redis hash. Both writers store the roles as the role mask of
+ * RoleCatalog. The reader understands both layouts, and the role references the mapping converter
+ * wrote before masks existed, so users of any layout can be read while a migration is half done.
+ */
+public final class UserStorageConverters {
+
+    public static final String FORMAT_FIELDS = "fields";
+    public static final String FORMAT_BINARY = "binary";
+    // Format and layout revision the stored users were last rewritten to, revision 2 added the role mask to the field layout
+    static final String LAYOUT_KEY = User.KEYSPACE + ":storage:layout";
+    static final String LAYOUT_REVISION = "2";
+    public static final String BLOB_FIELD = "_b";
+
+    // The save and delete scripts read the email from its own field, whatever the layout
+    static final String EMAIL_FIELD = "email";
+    private static final String PASSWORD_FIELD = "_p";
+    private static final String ROLE_MASK_FIELD = "roleMask";
+    private static final String ROLES_FIELD_PREFIX = "roles.[";
+    private static final String ROLE_KEY_PREFIX = "roles:";
+
+    private UserStorageConverters() {
+    }
+
+    /*
+     * Compact layout: the email, the password hash and one blob encoded by UserBinaryCodec. The hash
+     * is kept apart so each value stays under hash-max-listpack-value (64 bytes) and Redis stores the
+     * whole user as one small listpack instead of a hash table.
+     */
+    @WritingConverter
+    public static class BinaryUserWriter implements Converter<User, Map<String, byte[]>> {
+
+        @Override
+        public Map<String, byte[]> convert(User user) {
+            Map<String, byte[]> fields = new HashMap<>(4);
+            if(user.getEmail() != null) {
+                fields.put(EMAIL_FIELD, user.getEmail().getBytes(StandardCharsets.UTF_8));
+            }
+            if(user.getProtectedPassword() != null) {
+                fields.put(PASSWORD_FIELD, user.getProtectedPassword().getBytes(StandardCharsets.UTF_8));
+            }
+            fields.put(BLOB_FIELD, UserBinaryCodec.encode(user));
+            return fields;
+        }
+
+    }
+
+    /*
+     * Field per property layout: every property under its own name, as the mapping converter writes them,
+     * except the roles, stored as one decimal role mask. Roles without a mask bit are written as role
+     * references instead, the way the mapping converter does.
+     */
+    @WritingConverter
+    public static class FieldsUserWriter implements Converter<User, Map<String, byte[]>> {
+
+        @Override
+        public Map<String, byte[]> convert(User user) {
+            Map<String, byte[]> fields = new HashMap<>(8);
+            putString(fields, "id", user.getId() != null ? String.valueOf(user.getId()) : null);
+            putString(fields, "firstName", user.getFirstName());
+            putString(fields, "lastName", user.getLastName());
+            putString(fields, EMAIL_FIELD, user.getEmail());
+            putString(fields, "protectedPassword", user.getProtectedPassword());
+            Set<Role> roles = user.getRoles();
+            if(roles != null) {
+                Long roleMask = UserBinaryCodec.roleMask(roles);
+                if(roleMask != null) {
+                    putString(fields, ROLE_MASK_FIELD, String.valueOf(roleMask));
+                } else {
+                    int i = 0;
+                    for(Role role : roles) {
+                        putString(fields, ROLES_FIELD_PREFIX + i++ + "]", ROLE_KEY_PREFIX + role.getId());
+                    }
+                }
+            }
+            return fields;
+        }
+
+    }
+
+    // Role references and role masks are resolved by the given functions instead of being followed in Redis
+    @ReadingConverter
+    public static class UserReader implements Converter<Map<String, byte[]>, User> {
+
+        private final Function<Long, Role> roleResolver;
+        private final LongFunction<Set<Role>> maskResolver;
+
+        public UserReader(Function<Long, Role> roleResolver, LongFunction<Set<Role>> maskResolver) {
+            this.roleResolver = roleResolver;
+            this.maskResolver = maskResolver;
+        }
+
+        @Override
+        public User convert(Map<String, byte[]> fields) {
+            byte[] blob = fields.get(BLOB_FIELD);
+            User user;
+            if(blob != null) {
+                user = UserBinaryCodec.decode(blob, roleResolver, maskResolver);
+                user.setProtectedPassword(string(fields.get(PASSWORD_FIELD)));
+            } else {
+                user = readFields(fields);
+            }
+            user.setEmail(string(fields.get(EMAIL_FIELD)));
+            return user;
+        }
+
+        private User readFields(Map<String, byte[]> fields) {
+            User user = new User();
+            String id = string(fields.get("id"));
+            user.setId(id != null ? Long.valueOf(id) : null);
+            user.setFirstName(string(fields.get("firstName")));
+            user.setLastName(string(fields.get("lastName")));
+            user.setProtectedPassword(string(fields.get("protectedPassword")));
+            String roleMask = string(fields.get(ROLE_MASK_FIELD));
+            if(roleMask != null) {
+                Set<Role> roles = maskResolver.apply(Long.parseLong(roleMask));
+                if(roles == null) {
+                    throw new IllegalStateException("Unknown role bits in role mask " + Long.toBinaryString(Long.parseLong(roleMask)));
+                }
+                user.setRoles(roles);
+                return user;
+            }
+            Set<Role> roles = null;
+            for(Map.Entry<String, byte[]> field : fields.entrySet()) {
+                String value = string(field.getValue());
+                if(field.getKey().startsWith(ROLES_FIELD_PREFIX) && value.startsWith(ROLE_KEY_PREFIX)) {
+                    Long roleId = Long.valueOf(value.substring(ROLE_KEY_PREFIX.length()));
+                    Role role = roleResolver.apply(roleId);
+                    if(roles == null) {
+                        roles = new HashSet<>();
+                    }
+                    roles.add(role != null ? role : new Role(roleId, null));
+                }
+            }
+            user.setRoles(roles);
+            return user;
+        }
+
+    }
+
+    private static void putString(Map<String, byte[]> fields, String field, String value) {
+        if(value != null) {
+            fields.put(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String string(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+}
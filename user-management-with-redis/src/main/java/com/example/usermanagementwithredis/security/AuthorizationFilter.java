@@ -1,18 +1,11 @@
 package com.example.usermanagementwithredis.security;
 
-import com.example.usermanagementwithredis.entities.User;
-import com.example.usermanagementwithredis.services.UserService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Lazy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 import org.springframework.stereotype.Component;
@@ -22,25 +15,26 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.List;
-import java.util.stream.Collectors;
 
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class AuthorizationFilter extends BasicAuthenticationFilter {
 
     private final Logger logger = LoggerFactory.getLogger(AuthorizationFilter.class);
-    private final UserService userService;
+    private final PrincipalCache principalCache;
+    private final TokenVerifier tokenVerifier;
+    private final TokenRevocations tokenRevocations;
+    private final StatelessClaims statelessClaims;
 
-    @Value("${security.token-key}")
-    private String tokenKey;
     @Value("${security.token-type}")
     private String tokenType;
-    @Value("${security.separator}")
-    private String separator;
 
-    public AuthorizationFilter(AuthenticationManager authenticationManager, @Lazy UserService userService) {
+    public AuthorizationFilter(AuthenticationManager authenticationManager, PrincipalCache principalCache, TokenVerifier tokenVerifier, TokenRevocations tokenRevocations, StatelessClaims statelessClaims) {
         super(authenticationManager);
-        this.userService = userService;
+        this.principalCache = principalCache;
+        this.tokenVerifier = tokenVerifier;
+        this.tokenRevocations = tokenRevocations;
+        this.statelessClaims = statelessClaims;
     }
 
     @Override
@@ -48,7 +42,7 @@ public class AuthorizationFilter extends BasicAuthenticationFilter {
         String authorizationHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
 
         if(authorizationHeader != null && authorizationHeader.startsWith(tokenType)) {
-            UsernamePasswordAuthenticationToken authentication = getAuthentication(request);
+            RoleMaskAuthentication authentication = getAuthentication(request);
             if(authentication != null) {
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             } else {
@@ -61,25 +55,20 @@ public class AuthorizationFilter extends BasicAuthenticationFilter {
         chain.doFilter(request, response);
     }
 
-    private UsernamePasswordAuthenticationToken getAuthentication(HttpServletRequest request) {
+    private RoleMaskAuthentication getAuthentication(HttpServletRequest request) {
         String authorizationHeader = request.getHeader(HttpHeaders.AUTHORIZATION);
-        String token = authorizationHeader.replace(tokenType, "");
-        UsernamePasswordAuthenticationToken authentication = null;
+        String token = authorizationHeader.substring(tokenType.length()).trim();
+        RoleMaskAuthentication authentication = null;
 
         try {
-            Claims claims = Jwts.parser()
-                    .setSigningKey(tokenKey)
-                    .parseClaimsJws(token)
-                    .getBody();
-            String subject = claims.getSubject();
-            String[] subjectData = subject.split(separator);
-            if(subjectData.length == 2 && subjectData[0] !=null && subjectData[1] != null) {
-                Long id = Long.parseLong(subjectData[0]);
-                String email = subjectData[1];
-                User user = userService.getByEmail(email);
-                if(user != null) {
-                    List<GrantedAuthority> authorities = user.getRoles().stream().map(role -> new SimpleGrantedAuthority(role.getName())).collect(Collectors.toList());
-                    authentication = new UsernamePasswordAuthenticationToken(user, null, authorities);
+            VerifiedToken verifiedToken = tokenVerifier.verify(token);
+            if(verifiedToken != null && !tokenRevocations.isRevoked(verifiedToken)) {
+                CachedPrincipal principal = statelessClaims.toPrincipal(verifiedToken);
+                if(principal == null) {
+                    principal = principalCache.get(verifiedToken.getEmail());
+                }
+                if(principal != null) {
+                    authentication = new RoleMaskAuthentication(principal, verifiedToken);
                 }
             }
         } catch (Exception ex) {
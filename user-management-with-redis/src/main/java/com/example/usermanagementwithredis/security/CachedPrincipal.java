@@ -0,0 +1,20 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.User;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class CachedPrincipal {
+    private final User user;
+    private final List<GrantedAuthority> authorities;
+    // RoleCatalog mask of the user's roles, null when one of them has no bit
+    private final Long roleMask;
+    private final long loadedAt;
+}
@@ -0,0 +1,99 @@
+package com.example.usermanagementwithredis.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Login attempts are limited by two token buckets, one per email and one per client address, kept in Redis
+ * under logins:email:<email> and logins:address:<address> and updated atomically by login-throttle.lua.
+ * The check runs before the password is verified, so a throttled attempt costs one script call and no
+ * hashing. Decisions are counted under security.login.throttle by result. The reactive stack runs the same
+ * script through the reactive template, which only exists there.
+ */
+@Component
+public class LoginThrottle {
+
+    private static final RedisScript<String> THROTTLE = RedisScript.of(new ClassPathResource("scripts/login-throttle.lua"), String.class);
+    private static final String ALLOWED = "allowed";
+    private static final String EMAIL_PREFIX = "logins:email:";
+    private static final String ADDRESS_PREFIX = "logins:address:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate;
+    private final boolean enabled;
+    private final String[] limits;
+    private final Counter allowed;
+    private final Counter emailLimited;
+    private final Counter addressLimited;
+
+    @Autowired
+    public LoginThrottle(StringRedisTemplate redisTemplate,
+                         ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate,
+                         MeterRegistry meterRegistry,
+                         @Value("${security.login-throttle.enabled}") boolean enabled,
+                         @Value("${security.login-throttle.email.capacity}") int emailCapacity,
+                         @Value("${security.login-throttle.email.refill-interval}") long emailRefillInterval,
+                         @Value("${security.login-throttle.address.capacity}") int addressCapacity,
+                         @Value("${security.login-throttle.address.refill-interval}") long addressRefillInterval) {
+        this.redisTemplate = redisTemplate;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.enabled = enabled;
+        this.limits = new String[] {
+                String.valueOf(emailCapacity), String.valueOf(emailRefillInterval),
+                String.valueOf(addressCapacity), String.valueOf(addressRefillInterval)
+        };
+        this.allowed = Counter.builder("security.login.throttle").tag("result", "allowed").register(meterRegistry);
+        this.emailLimited = Counter.builder("security.login.throttle").tag("result", "email-limited").register(meterRegistry);
+        this.addressLimited = Counter.builder("security.login.throttle").tag("result", "address-limited").register(meterRegistry);
+    }
+
+    // Takes a token for the attempt, or throws with the wait until the limiting bucket has one again
+    public void acquire(String email, String clientAddress) {
+        if(enabled) {
+            decide(redisTemplate.execute(THROTTLE, keys(email, clientAddress), (Object[]) limits));
+        }
+    }
+
+    // Same as acquire, signalling LoginThrottledException instead of throwing it
+    public Mono<Void> acquireAsync(String email, String clientAddress) {
+        if(!enabled) {
+            return Mono.empty();
+        }
+        return reactiveRedisTemplate.getObject().execute(THROTTLE, keys(email, clientAddress), List.of(limits))
+                .next()
+                .defaultIfEmpty(ALLOWED)
+                .doOnNext(this::decide)
+                .then();
+    }
+
+    private static List<String> keys(String email, String clientAddress) {
+        return List.of(
+                EMAIL_PREFIX + (email != null ? email.trim().toLowerCase(Locale.ROOT) : ""),
+                ADDRESS_PREFIX + (clientAddress != null ? clientAddress : "unknown"));
+    }
+
+    private void decide(String result) {
+        if(result == null || ALLOWED.equals(result)) {
+            allowed.increment();
+            return;
+        }
+        int separator = result.indexOf(':');
+        String limit = result.substring(0, separator);
+        long waitMillis = Long.parseLong(result.substring(separator + 1));
+        ("email".equals(limit) ? emailLimited : addressLimited).increment();
+        throw new LoginThrottledException(limit, Math.max(1, (waitMillis + 999) / 1000));
+    }
+
+}
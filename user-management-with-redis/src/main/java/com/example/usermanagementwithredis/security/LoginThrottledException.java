@@ -0,0 +1,15 @@
+package com.example.usermanagementwithredis.security;
+
+public class LoginThrottledException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LoginThrottledException(String limit, long retryAfterSeconds) {
+        super("Too many login attempts for the " + limit);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
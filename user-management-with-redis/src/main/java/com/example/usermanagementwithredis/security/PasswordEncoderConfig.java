@@ -0,0 +1,25 @@
+package com.example.usermanagementwithredis.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * The encoder is shared by both web stacks, so it lives outside the servlet security configuration.
+ */
+@Configuration
+public class PasswordEncoderConfig {
+
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    public PasswordEncoderConfig(PasswordHashingExecutor passwordHashingExecutor) {
+        this.passwordHashingExecutor = passwordHashingExecutor;
+    }
+
+    @Bean
+    public PooledBCryptPasswordEncoder provideBCryptPasswordEncoder() {
+        return new PooledBCryptPasswordEncoder(passwordHashingExecutor);
+    }
+
+}
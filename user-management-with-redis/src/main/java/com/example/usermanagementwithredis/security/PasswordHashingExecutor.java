@@ -0,0 +1,170 @@
+package com.example.usermanagementwithredis.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * BCrypt is deliberately expensive, so every hash and verification runs on this small,
+ * dedicated pool instead of on servlet threads. The queue is bounded: when it is full the
+ * work is rejected straight away and the caller answers 503 rather than piling up requests.
+ * Bulk imports hash on a pool of their own, so a large import never holds the threads or
+ * queue slots that logins and sign-ups are admitted to.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor importExecutor;
+    private final int importPoolSize;
+    private final long retryAfterSeconds;
+    private final Timer waitTimer;
+    private final Timer encodeTimer;
+    private final Timer verifyTimer;
+    private final Counter rejected;
+
+    @Autowired
+    public PasswordHashingExecutor(@Value("${security.password-hashing.threads}") int threads,
+                                   @Value("${security.password-hashing.queue-capacity}") int queueCapacity,
+                                   @Value("${security.password-hashing.retry-after}") long retryAfterSeconds,
+                                   @Value("${security.password-hashing.import-threads}") int importThreads,
+                                   MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        // Each running import keeps at most importPoolSize hashes in flight, so this queue stays short
+        this.importPoolSize = importThreads > 0 ? importThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.importExecutor = new ThreadPoolExecutor(importPoolSize, importPoolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                daemonThreads("password-import-"));
+        this.retryAfterSeconds = retryAfterSeconds;
+        Gauge.builder("password.hashing.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        Gauge.builder("password.hashing.import.active", importExecutor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        this.waitTimer = Timer.builder("password.hashing.wait").description("Time spent queued before hashing starts").register(meterRegistry);
+        this.encodeTimer = Timer.builder("password.hashing.time").tag("operation", "encode").register(meterRegistry);
+        this.verifyTimer = Timer.builder("password.hashing.time").tag("operation", "verify").register(meterRegistry);
+        this.rejected = Counter.builder("password.hashing.rejected").register(meterRegistry);
+    }
+
+    public String encode(Supplier<String> hashing) {
+        return execute(hashing, encodeTimer);
+    }
+
+    public boolean verify(Supplier<Boolean> verification) {
+        return execute(verification, verifyTimer);
+    }
+
+    /*
+     * Hashes a batch in parallel on the import pool. The caller waits for a free import thread before
+     * submitting the next hash, so concurrent imports slow each other down instead of being rejected.
+     */
+    public List<String> encodeAll(List<Supplier<String>> hashings) {
+        Semaphore inFlight = new Semaphore(importPoolSize);
+        List<Future<String>> futures = new ArrayList<>(hashings.size());
+        try {
+            for(Supplier<String> hashing : hashings) {
+                inFlight.acquire();
+                try {
+                    futures.add(importExecutor.submit(() -> {
+                        try {
+                            return encodeTimer.record(hashing);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException ex) {
+                    // Only after shutdown
+                    inFlight.release();
+                    futures.forEach(future -> future.cancel(true));
+                    throw ex;
+                }
+            }
+            List<String> hashes = new ArrayList<>(futures.size());
+            for(Future<String> future : futures) {
+                hashes.add(await(future));
+            }
+            return hashes;
+        } catch (InterruptedException ex) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", ex);
+        }
+    }
+
+    // Non-blocking variants for the reactive handlers, a rejection completes the future exceptionally
+    public CompletableFuture<String> encodeAsync(Supplier<String> hashing) {
+        return submit(hashing, encodeTimer);
+    }
+
+    public CompletableFuture<Boolean> verifyAsync(Supplier<Boolean> verification) {
+        return submit(verification, verifyTimer);
+    }
+
+    private <T> T execute(Supplier<T> work, Timer timer) {
+        return await(submit(work, timer));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work, Timer timer) {
+        long submittedAt = System.nanoTime();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    future.complete(timer.record(work));
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            future.completeExceptionally(new PasswordHashingRejectedException(retryAfterSeconds));
+        }
+        return future;
+    }
+
+    private <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", ex);
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        importExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.example.usermanagementwithredis.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/*
+ * BCrypt encoder whose hashing and verification run on the PasswordHashingExecutor,
+ * so authentication, user writes and seeding all share the same admission control.
+ */
+public class PooledBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private final PasswordHashingExecutor hashingExecutor;
+
+    public PooledBCryptPasswordEncoder(PasswordHashingExecutor hashingExecutor) {
+        this.hashingExecutor = hashingExecutor;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return hashingExecutor.encode(() -> super.encode(rawPassword));
+    }
+
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+        List<Supplier<String>> hashings = rawPasswords.stream()
+                .map(rawPassword -> (Supplier<String>) () -> super.encode(rawPassword))
+                .collect(Collectors.toList());
+        return hashingExecutor.encodeAll(hashings);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return hashingExecutor.verify(() -> super.matches(rawPassword, encodedPassword));
+    }
+
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return hashingExecutor.encodeAsync(() -> super.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return hashingExecutor.verifyAsync(() -> super.matches(rawPassword, encodedPassword));
+    }
+
+}
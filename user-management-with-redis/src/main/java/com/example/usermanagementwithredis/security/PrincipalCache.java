@@ -0,0 +1,165 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.UserRepository;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ * Near-cache of the principals resolved by the authorization filter, keyed by email.
+ * Entries live for a short TTL and are dropped as soon as a user is edited or deleted,
+ * locally and on every other node through a Redis pub/sub channel.
+ * Misses are loaded by the first caller outside the cache's map lock, so a virtual thread
+ * waiting on Redis does not pin its carrier, and concurrent callers wait on the same load.
+ */
+@Component
+public class PrincipalCache implements MessageListener {
+
+    private final Logger logger = LoggerFactory.getLogger(PrincipalCache.class);
+    private final UserRepository userRepository;
+    private final RoleCatalog roleCatalog;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate;
+    private final String channel;
+    private final AsyncCache<String, CachedPrincipal> principals;
+    private final Timer staleness;
+    private final Counter remoteInvalidations;
+
+    @Autowired
+    public PrincipalCache(UserRepository userRepository,
+                          RoleCatalog roleCatalog,
+                          StringRedisTemplate redisTemplate,
+                          ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate,
+                          RedisMessageListenerContainer listenerContainer,
+                          MeterRegistry meterRegistry,
+                          @Value("${security.principal-cache.maximum-size}") long maximumSize,
+                          @Value("${security.principal-cache.ttl}") Duration ttl,
+                          @Value("${security.principal-cache.channel}") String channel) {
+        this.userRepository = userRepository;
+        this.roleCatalog = roleCatalog;
+        this.redisTemplate = redisTemplate;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.channel = channel;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals.synchronous(), "principals");
+        this.staleness = Timer.builder("principals.cache.staleness")
+                .description("Age of the cached principal when it is served")
+                .register(meterRegistry);
+        this.remoteInvalidations = Counter.builder("principals.cache.invalidations.received")
+                .register(meterRegistry);
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+
+    public CachedPrincipal get(String email) {
+        long requestedAt = System.currentTimeMillis();
+        CompletableFuture<CachedPrincipal> loading = new CompletableFuture<>();
+        CompletableFuture<CachedPrincipal> cached = principals.get(email, (key, executor) -> loading);
+        if(cached == loading) {
+            try {
+                loading.complete(load(email));
+            } catch (RuntimeException ex) {
+                loading.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        CachedPrincipal principal = cached.join();
+        recordStaleness(principal, requestedAt);
+        return principal;
+    }
+
+    // The reactive filter loads misses itself without blocking, then hands the user back through put
+    public CachedPrincipal getIfPresent(String email) {
+        CompletableFuture<CachedPrincipal> cached = principals.getIfPresent(email);
+        // An entry that is still loading counts as a miss rather than blocking the event loop
+        CachedPrincipal principal = cached != null && cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+        recordStaleness(principal, System.currentTimeMillis());
+        return principal;
+    }
+
+    public CachedPrincipal put(User user) {
+        CachedPrincipal principal = toPrincipal(user);
+        principals.put(user.getEmail(), CompletableFuture.completedFuture(principal));
+        return principal;
+    }
+
+    public void invalidate(String email) {
+        if(email != null) {
+            principals.synchronous().invalidate(email);
+            redisTemplate.convertAndSend(channel, email);
+        }
+    }
+
+    // Same as invalidate, publishing through the reactive template of the reactive stack
+    public Mono<Void> invalidateAsync(String email) {
+        if(email == null) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            principals.synchronous().invalidate(email);
+            return reactiveRedisTemplate.getObject().convertAndSend(channel, email);
+        }).then();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String email = new String(message.getBody(), StandardCharsets.UTF_8);
+        principals.synchronous().invalidate(email);
+        remoteInvalidations.increment();
+        logger.debug("Principal invalidated by channel message: {}", email);
+    }
+
+    private CachedPrincipal load(String email) {
+        User user = userRepository.findByEmail(email).orElse(null);
+        CachedPrincipal principal = null;
+        if(user != null) {
+            principal = toPrincipal(user);
+        }
+        return principal;
+    }
+
+    private CachedPrincipal toPrincipal(User user) {
+        Long roleMask = roleCatalog.getMask(user.getRoles());
+        List<GrantedAuthority> authorities = roleMask != null ? roleCatalog.getAuthorities(roleMask) : null;
+        if(authorities == null) {
+            authorities = user.getRoles().stream().map(role -> roleCatalog.getAuthority(role.getName())).collect(Collectors.toList());
+        }
+        return new CachedPrincipal(user, authorities, roleMask, System.currentTimeMillis());
+    }
+
+    private void recordStaleness(CachedPrincipal principal, long requestedAt) {
+        if(principal != null && principal.getLoadedAt() < requestedAt) {
+            staleness.record(requestedAt - principal.getLoadedAt(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
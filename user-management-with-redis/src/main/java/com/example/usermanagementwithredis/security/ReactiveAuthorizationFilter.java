@@ -0,0 +1,92 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.repositories.ReactiveUserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/*
+ * Reactive counterpart of AuthorizationFilter. The token check is CPU only and runs inline,
+ * principal cache misses are loaded through the reactive repository instead of blocking.
+ */
+public class ReactiveAuthorizationFilter implements WebFilter {
+
+    private final Logger logger = LoggerFactory.getLogger(ReactiveAuthorizationFilter.class);
+    private final PrincipalCache principalCache;
+    private final TokenVerifier tokenVerifier;
+    private final TokenRevocations tokenRevocations;
+    private final StatelessClaims statelessClaims;
+    private final ReactiveUserRepository userRepository;
+    private final String tokenType;
+
+    public ReactiveAuthorizationFilter(PrincipalCache principalCache, TokenVerifier tokenVerifier, TokenRevocations tokenRevocations, StatelessClaims statelessClaims, ReactiveUserRepository userRepository, String tokenType) {
+        this.principalCache = principalCache;
+        this.tokenVerifier = tokenVerifier;
+        this.tokenRevocations = tokenRevocations;
+        this.statelessClaims = statelessClaims;
+        this.userRepository = userRepository;
+        this.tokenType = tokenType;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String authorizationHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+
+        if(authorizationHeader == null || !authorizationHeader.startsWith(tokenType)) {
+            // Accept anonymous authentication, but resources could be locked for the request
+            return chain.filter(exchange);
+        }
+
+        // The chain completes empty, so the fallback only applies to the lookup of the authentication
+        return getAuthentication(authorizationHeader)
+                .map(authentication -> chain.filter(exchange)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication)))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    // Don't accept wrong credentials
+                    exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+                    return exchange.getResponse().setComplete();
+                }))
+                .flatMap(filtered -> filtered);
+    }
+
+    private Mono<RoleMaskAuthentication> getAuthentication(String authorizationHeader) {
+        String token = authorizationHeader.substring(tokenType.length()).trim();
+        VerifiedToken verifiedToken;
+        try {
+            verifiedToken = tokenVerifier.verify(token);
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+            verifiedToken = null;
+        }
+        if(verifiedToken == null) {
+            return Mono.empty();
+        }
+
+        VerifiedToken verified = verifiedToken;
+        // Only tokens the local revocation filters cannot clear are checked in Redis
+        return tokenRevocations.isRevokedAsync(verified)
+                .filter(isRevoked -> !isRevoked)
+                .flatMap(notRevoked -> {
+                    CachedPrincipal trusted = statelessClaims.toPrincipal(verified);
+                    if(trusted != null) {
+                        return Mono.just(trusted);
+                    }
+                    CachedPrincipal cached = principalCache.getIfPresent(verified.getEmail());
+                    return cached != null
+                            ? Mono.just(cached)
+                            : userRepository.findByEmail(verified.getEmail()).map(principalCache::put);
+                })
+                .map(it -> new RoleMaskAuthentication(it, verified))
+                .onErrorResume(ex -> {
+                    logger.error("Exception captured", ex);
+                    return Mono.empty();
+                });
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.repositories.ReactiveUserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.authorization.HttpStatusServerAccessDeniedHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+/*
+ * Security setup of the reactive web stack. It mirrors WebSecurity: stateless, token based,
+ * and every route is open at the filter level while the controller methods carry the rules.
+ */
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableReactiveMethodSecurity
+public class ReactiveWebSecurity {
+
+    private final PrincipalCache principalCache;
+    private final TokenVerifier tokenVerifier;
+    private final TokenRevocations tokenRevocations;
+    private final StatelessClaims statelessClaims;
+    private final ReactiveUserRepository userRepository;
+
+    @Value("${security.token-type}")
+    private String tokenType;
+
+    @Autowired
+    public ReactiveWebSecurity(PrincipalCache principalCache, TokenVerifier tokenVerifier, TokenRevocations tokenRevocations, StatelessClaims statelessClaims, ReactiveUserRepository userRepository) {
+        this.principalCache = principalCache;
+        this.tokenVerifier = tokenVerifier;
+        this.tokenRevocations = tokenRevocations;
+        this.statelessClaims = statelessClaims;
+        this.userRepository = userRepository;
+    }
+
+    @Bean
+    public SecurityWebFilterChain provideSecurityWebFilterChain(ServerHttpSecurity http) {
+        return http.csrf().disable()
+                .httpBasic().disable()
+                .formLogin().disable()
+                .logout().disable()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling()
+                    .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN))
+                    .accessDeniedHandler(new HttpStatusServerAccessDeniedHandler(HttpStatus.FORBIDDEN))
+                .and()
+                .authorizeExchange().anyExchange().permitAll()
+                .and()
+                .addFilterAt(new ReactiveAuthorizationFilter(principalCache, tokenVerifier, tokenRevocations, statelessClaims, userRepository, tokenType), SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+}
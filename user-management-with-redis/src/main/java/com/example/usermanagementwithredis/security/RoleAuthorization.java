@@ -0,0 +1,42 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+/*
+ * Administrator check of the @PreAuthorize expressions, written as @roleAuthorization.isAdministrator(authentication).
+ * For the authentications set by the authorization filters it is one bit test of the role mask against the
+ * bit the role catalog resolved, anything else falls back to comparing authority names as hasAuthority does.
+ */
+@Component
+public class RoleAuthorization {
+
+    private final RoleCatalog roleCatalog;
+
+    @Autowired
+    public RoleAuthorization(RoleCatalog roleCatalog) {
+        this.roleCatalog = roleCatalog;
+    }
+
+    public boolean isAdministrator(Authentication authentication) {
+        if(authentication instanceof RoleMaskAuthentication) {
+            Long roleMask = ((RoleMaskAuthentication) authentication).getRoleMask();
+            if(roleMask != null) {
+                return roleCatalog.isAdministrator(roleMask);
+            }
+        }
+        if(authentication != null) {
+            for(GrantedAuthority authority : authentication.getAuthorities()) {
+                if(Role.ADMINISTRATOR.equals(authority.getAuthority())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+/*
+ * Authentication set by the authorization filters. It hands out the principal's authority list as is
+ * instead of copying it per request, and carries the role mask that RoleAuthorization tests.
+ * The verified token is kept as the credentials so logout can revoke it.
+ */
+public class RoleMaskAuthentication implements Authentication {
+
+    private final CachedPrincipal principal;
+    private final VerifiedToken token;
+    private volatile boolean authenticated = true;
+
+    public RoleMaskAuthentication(CachedPrincipal principal, VerifiedToken token) {
+        this.principal = principal;
+        this.token = token;
+    }
+
+    public Long getRoleMask() {
+        return principal.getRoleMask();
+    }
+
+    @Override
+    public List<GrantedAuthority> getAuthorities() {
+        return principal.getAuthorities();
+    }
+
+    @Override
+    public VerifiedToken getCredentials() {
+        return token;
+    }
+
+    @Override
+    public Object getDetails() {
+        return null;
+    }
+
+    @Override
+    public User getPrincipal() {
+        return principal.getUser();
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    @Override
+    public void setAuthenticated(boolean authenticated) {
+        if(authenticated) {
+            throw new IllegalArgumentException("A role mask authentication can only be trusted when created by an authorization filter");
+        }
+        this.authenticated = false;
+    }
+
+    @Override
+    public String getName() {
+        return principal.getUser().getEmail();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[email=" + getName() + ", roleMask=" + getRoleMask() + "]";
+    }
+
+}
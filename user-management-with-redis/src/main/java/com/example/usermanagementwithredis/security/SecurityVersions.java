@@ -0,0 +1,116 @@
+package com.example.usermanagementwithredis.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Per-user security version, bumped whenever what a token says about the user stops being true
+ * (roles or email edited, user deleted). Tokens carry the version they were issued at, so a token whose
+ * version is still the current one can be trusted without loading the user. Versions live in the
+ * users:security-versions hash, only users that ever changed have one, and a deleted user keeps its bumped
+ * version as a tombstone, so versions only ever grow. With security.stateless-claims.enabled each node keeps
+ * a copy in memory that follows the changes channel and is reloaded on a schedule in case a message was
+ * missed. Without it nothing is loaded: bumps are still written for the nodes that trust claims, and
+ * current() answers 0, which a node trusting claims only accepts for users that never changed.
+ * bumpAsync writes through the reactive template of the reactive stack.
+ */
+@Component
+public class SecurityVersions implements MessageListener {
+
+    static final String KEY = "users:security-versions";
+
+    private final Logger logger = LoggerFactory.getLogger(SecurityVersions.class);
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate;
+    private final String channel;
+    private final boolean enabled;
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SecurityVersions(StringRedisTemplate redisTemplate,
+                            ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            MeterRegistry meterRegistry,
+                            @Value("${security.stateless-claims.channel}") String channel,
+                            @Value("${security.stateless-claims.enabled}") boolean enabled) {
+        this.redisTemplate = redisTemplate;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.channel = channel;
+        this.enabled = enabled;
+        if(enabled) {
+            meterRegistry.gaugeMapSize("security.versions.tracked", Tags.empty(), versions);
+            listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+            reload();
+        }
+    }
+
+    public long current(Long userId) {
+        return versions.getOrDefault(userId, 0L);
+    }
+
+    public long bump(Long userId) {
+        Long version = redisTemplate.opsForHash().increment(KEY, String.valueOf(userId), 1);
+        if(enabled) {
+            versions.merge(userId, version, Math::max);
+        }
+        redisTemplate.convertAndSend(channel, userId + ":" + version);
+        return version;
+    }
+
+    public Mono<Long> bumpAsync(Long userId) {
+        ReactiveStringRedisTemplate template = reactiveRedisTemplate.getObject();
+        return template.opsForHash().increment(KEY, String.valueOf(userId), 1)
+                .flatMap(version -> {
+                    if(enabled) {
+                        versions.merge(userId, version, Math::max);
+                    }
+                    return template.convertAndSend(channel, userId + ":" + version).thenReturn(version);
+                });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        Long userId = Long.valueOf(body.substring(0, separator));
+        versions.merge(userId, Long.valueOf(body.substring(separator + 1)), Math::max);
+    }
+
+    @Scheduled(fixedDelayString = "${security.stateless-claims.reload-interval}", initialDelayString = "${security.stateless-claims.reload-interval}")
+    public void scheduledReload() {
+        if(!enabled) {
+            return;
+        }
+        try {
+            reload();
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+        }
+    }
+
+    // Versions never shrink, deletes included, so merging by max catches up on any missed message
+    void reload() {
+        Map<Object, Object> stored = redisTemplate.opsForHash().entries(KEY);
+        stored.forEach((userId, version) -> versions.merge(Long.valueOf((String) userId), Long.valueOf((String) version), Math::max));
+        logger.debug("Security versions loaded for {} users", versions.size());
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/*
+ * With security.stateless-claims.enabled, a verified token whose security version is still current
+ * is trusted as is: the principal is built from its subject and role mask, with the roles taken
+ * from the in-memory catalog, and the user is not loaded. Principals are counted under
+ * security.principals by where they came from.
+ */
+@Component
+public class StatelessClaims {
+
+    private final boolean enabled;
+    private final SecurityVersions securityVersions;
+    private final RoleCatalog roleCatalog;
+    private final Counter fromToken;
+    private final Counter fromRedis;
+
+    @Autowired
+    public StatelessClaims(@Value("${security.stateless-claims.enabled}") boolean enabled,
+                           SecurityVersions securityVersions,
+                           RoleCatalog roleCatalog,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.securityVersions = securityVersions;
+        this.roleCatalog = roleCatalog;
+        this.fromToken = Counter.builder("security.principals").tag("source", "token").register(meterRegistry);
+        this.fromRedis = Counter.builder("security.principals").tag("source", "redis").register(meterRegistry);
+    }
+
+    // The principal described by the token, or null when the user has to be loaded
+    public CachedPrincipal toPrincipal(VerifiedToken token) {
+        CachedPrincipal principal = null;
+        if(enabled) {
+            if(token.getSecurityVersion() != null && token.getSecurityVersion() >= securityVersions.current(token.getId())) {
+                principal = fromClaims(token);
+            }
+            (principal != null ? fromToken : fromRedis).increment();
+        }
+        return principal;
+    }
+
+    private CachedPrincipal fromClaims(VerifiedToken token) {
+        Long roleMask = token.getRoleMask();
+        // Without a mask or with a bit the catalog does not know yet, the stored user decides
+        Set<Role> roles = roleMask != null ? roleCatalog.getRoles(roleMask) : null;
+        if(roles == null) {
+            return null;
+        }
+        User user = new User(token.getId(), null, null, token.getEmail(), null, roles);
+        return new CachedPrincipal(user, roleCatalog.getAuthorities(roleMask), roleMask, token.getIssuedAt());
+    }
+
+}
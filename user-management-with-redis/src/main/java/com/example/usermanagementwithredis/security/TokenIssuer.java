@@ -0,0 +1,53 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.User;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.UUID;
+
+@Component
+public class TokenIssuer {
+
+    static final String SECURITY_VERSION_CLAIM = "sv";
+    // Issue time in ms, iat only has seconds and revocations need to order tokens within one
+    static final String ISSUED_AT_MILLIS_CLAIM = "iatms";
+
+    private final Key signingKey;
+    private final String separator;
+    private final String authoritiesKey;
+    private final long validity;
+
+    @Autowired
+    public TokenIssuer(TokenVerifier tokenVerifier,
+                       @Value("${security.separator}") String separator,
+                       @Value("${security.authorities-key}") String authoritiesKey,
+                       @Value("${security.validity}") long validity) {
+        this.signingKey = tokenVerifier.getSigningKey();
+        this.separator = separator;
+        this.authoritiesKey = authoritiesKey;
+        this.validity = validity;
+    }
+
+    // A null role mask leaves the roles out of the token, they are then always loaded with the user
+    public String issue(User user, Long roleMask, long securityVersion) {
+        String subject = TokenSubject.format(user.getId(), user.getEmail(), separator);
+        long currentTime = System.currentTimeMillis();
+        return Jwts.builder()
+                .claim(authoritiesKey, roleMask)
+                .claim(SECURITY_VERSION_CLAIM, securityVersion)
+                .claim(ISSUED_AT_MILLIS_CLAIM, currentTime)
+                .setSubject(subject)
+                .setId(UUID.randomUUID().toString())
+                .setIssuedAt(new Date(currentTime))
+                .setExpiration(new Date(currentTime + validity))
+                .signWith(SignatureAlgorithm.HS256, signingKey)
+                .compact();
+    }
+
+}
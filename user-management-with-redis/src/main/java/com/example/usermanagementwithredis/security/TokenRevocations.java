@@ -0,0 +1,216 @@
+package com.example.usermanagementwithredis.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Revoked tokens. A logout adds the token id to the tokens:revoked sorted set, scored by the time the token
+ * would have expired, revoking every token of a user stores the time in the tokens:revoked-before hash.
+ * Each node mirrors both locally, the ids in a Bloom filter and the per-user times in a map, and learns
+ * about new revocations from a pub/sub channel, so a token that was never revoked is cleared without
+ * calling Redis. Only Bloom filter hits are confirmed in Redis. The filter is rebuilt from Redis on a
+ * schedule, which drops what expired from both and catches up on messages missed while disconnected.
+ * The Async methods do the same writes and lookups through the reactive template of the reactive stack.
+ */
+@Component
+public class TokenRevocations implements MessageListener {
+
+    private static final String REVOKED_KEY = "tokens:revoked";
+    private static final String REVOKED_BEFORE_KEY = "tokens:revoked-before";
+    private static final String TOKEN_MESSAGE = "jti:";
+    private static final String USER_MESSAGE = "user:";
+
+    private final Logger logger = LoggerFactory.getLogger(TokenRevocations.class);
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate;
+    private final String channel;
+    private final long validity;
+    private final long expectedTokens;
+    private final double falsePositiveRate;
+    private final Map<Long, Long> revokedBefore = new ConcurrentHashMap<>();
+    private final Counter confirmedRevoked;
+    private final Counter falsePositives;
+
+    private volatile BloomFilter revokedTokens;
+    // Filter being rebuilt, it receives the revocations announced meanwhile
+    private volatile BloomFilter pendingTokens;
+
+    @Autowired
+    public TokenRevocations(StringRedisTemplate redisTemplate,
+                            ObjectProvider<ReactiveStringRedisTemplate> reactiveRedisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            MeterRegistry meterRegistry,
+                            @Value("${security.validity}") long validity,
+                            @Value("${security.revocation.channel}") String channel,
+                            @Value("${security.revocation.expected-tokens}") long expectedTokens,
+                            @Value("${security.revocation.false-positive-rate}") double falsePositiveRate) {
+        this.redisTemplate = redisTemplate;
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.channel = channel;
+        this.validity = validity;
+        this.expectedTokens = expectedTokens;
+        this.falsePositiveRate = falsePositiveRate;
+        this.revokedTokens = new BloomFilter(expectedTokens, falsePositiveRate);
+        this.confirmedRevoked = Counter.builder("tokens.revocation.lookups").tag("result", "revoked").register(meterRegistry);
+        this.falsePositives = Counter.builder("tokens.revocation.lookups").tag("result", "false-positive").register(meterRegistry);
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+        rebuild();
+    }
+
+    public void revoke(VerifiedToken token) {
+        if(token.getTokenId() != null && token.getExpiration() > System.currentTimeMillis()) {
+            redisTemplate.opsForZSet().add(REVOKED_KEY, token.getTokenId(), token.getExpiration());
+            addToken(token.getTokenId());
+            redisTemplate.convertAndSend(channel, TOKEN_MESSAGE + token.getTokenId());
+        }
+    }
+
+    // Tokens of the user issued up to now, the entry is dropped by the first rebuild one token lifetime later
+    public void revokeAll(Long userId) {
+        long now = System.currentTimeMillis();
+        redisTemplate.opsForHash().put(REVOKED_BEFORE_KEY, String.valueOf(userId), String.valueOf(now));
+        revokedBefore.merge(userId, now, Math::max);
+        redisTemplate.convertAndSend(channel, USER_MESSAGE + userId + ":" + now);
+    }
+
+    public Mono<Void> revokeAsync(VerifiedToken token) {
+        if(token.getTokenId() == null || token.getExpiration() <= System.currentTimeMillis()) {
+            return Mono.empty();
+        }
+        ReactiveStringRedisTemplate template = reactiveRedisTemplate.getObject();
+        return template.opsForZSet().add(REVOKED_KEY, token.getTokenId(), token.getExpiration())
+                .doOnNext(added -> addToken(token.getTokenId()))
+                .then(template.convertAndSend(channel, TOKEN_MESSAGE + token.getTokenId()))
+                .then();
+    }
+
+    public Mono<Void> revokeAllAsync(Long userId) {
+        ReactiveStringRedisTemplate template = reactiveRedisTemplate.getObject();
+        return Mono.defer(() -> {
+            long now = System.currentTimeMillis();
+            return template.opsForHash().put(REVOKED_BEFORE_KEY, String.valueOf(userId), String.valueOf(now))
+                    .doOnNext(put -> revokedBefore.merge(userId, now, Math::max))
+                    .then(template.convertAndSend(channel, USER_MESSAGE + userId + ":" + now));
+        }).then();
+    }
+
+    // Memory only: false means the token is not revoked, true that isRevoked has to ask Redis
+    public boolean mightBeRevoked(VerifiedToken token) {
+        return isRevokedForUser(token) || (token.getTokenId() != null && revokedTokens.mightContain(token.getTokenId()));
+    }
+
+    public boolean isRevoked(VerifiedToken token) {
+        if(isRevokedForUser(token)) {
+            return true;
+        }
+        if(token.getTokenId() == null || !revokedTokens.mightContain(token.getTokenId())) {
+            return false;
+        }
+        Double expiration = redisTemplate.opsForZSet().score(REVOKED_KEY, token.getTokenId());
+        boolean revoked = expiration != null && expiration > System.currentTimeMillis();
+        (revoked ? confirmedRevoked : falsePositives).increment();
+        return revoked;
+    }
+
+    // Same answer as isRevoked, only Bloom filter hits are looked up in Redis
+    public Mono<Boolean> isRevokedAsync(VerifiedToken token) {
+        if(!mightBeRevoked(token)) {
+            return Mono.just(false);
+        }
+        if(isRevokedForUser(token)) {
+            return Mono.just(true);
+        }
+        return reactiveRedisTemplate.getObject().opsForZSet().score(REVOKED_KEY, token.getTokenId())
+                .map(expiration -> expiration > System.currentTimeMillis())
+                .defaultIfEmpty(false)
+                .doOnNext(revoked -> (revoked ? confirmedRevoked : falsePositives).increment());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if(body.startsWith(TOKEN_MESSAGE)) {
+            addToken(body.substring(TOKEN_MESSAGE.length()));
+        } else if(body.startsWith(USER_MESSAGE)) {
+            String[] parts = body.substring(USER_MESSAGE.length()).split(":");
+            revokedBefore.merge(Long.valueOf(parts[0]), Long.valueOf(parts[1]), Math::max);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.revocation.rebuild-interval}", initialDelayString = "${security.revocation.rebuild-interval}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+        }
+    }
+
+    synchronized void rebuild() {
+        BloomFilter rebuilt = new BloomFilter(expectedTokens, falsePositiveRate);
+        pendingTokens = rebuilt;
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+            Set<String> tokenIds = redisTemplate.opsForZSet().rangeByScore(REVOKED_KEY, now, Double.POSITIVE_INFINITY);
+            if(tokenIds != null) {
+                tokenIds.forEach(rebuilt::add);
+            }
+            revokedTokens = rebuilt;
+
+            // Past one token lifetime a revoke-all no longer matches any valid token
+            long horizon = now - validity;
+            List<Object> expired = new ArrayList<>();
+            redisTemplate.opsForHash().entries(REVOKED_BEFORE_KEY).forEach((userId, time) -> {
+                if(Long.parseLong((String) time) < horizon) {
+                    expired.add(userId);
+                } else {
+                    revokedBefore.merge(Long.valueOf((String) userId), Long.valueOf((String) time), Math::max);
+                }
+            });
+            if(!expired.isEmpty()) {
+                redisTemplate.opsForHash().delete(REVOKED_BEFORE_KEY, expired.toArray());
+            }
+            revokedBefore.values().removeIf(time -> time < horizon);
+            logger.debug("Revocations loaded: {} token ids, {} users", tokenIds != null ? tokenIds.size() : 0, revokedBefore.size());
+        } finally {
+            pendingTokens = null;
+        }
+    }
+
+    private void addToken(String tokenId) {
+        revokedTokens.add(tokenId);
+        BloomFilter pending = pendingTokens;
+        if(pending != null) {
+            pending.add(tokenId);
+        }
+    }
+
+    private boolean isRevokedForUser(VerifiedToken token) {
+        Long time = revokedBefore.get(token.getId());
+        // Issue times are in ms, a token from the same ms as the revocation is revoked too
+        return time != null && token.getIssuedAt() <= time;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.example.usermanagementwithredis.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/*
+ * The token subject is "<id><separator><email>". Parsing uses indexOf instead of String.split,
+ * which compiles a regex for multi-character separators on every call.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class TokenSubject {
+    private final Long id;
+    private final String email;
+
+    public static String format(Long id, String email, String separator) {
+        return id + separator + email;
+    }
+
+    public static TokenSubject parse(String subject, String separator) {
+        TokenSubject tokenSubject = null;
+        int separatorIndex = subject != null ? subject.indexOf(separator) : -1;
+        if(separatorIndex > 0 && subject.indexOf(separator, separatorIndex + separator.length()) < 0) {
+            Long id = Long.parseLong(subject.substring(0, separatorIndex));
+            String email = subject.substring(separatorIndex + separator.length());
+            if(!email.isEmpty()) {
+                tokenSubject = new TokenSubject(id, email);
+            }
+        }
+        return tokenSubject;
+    }
+}
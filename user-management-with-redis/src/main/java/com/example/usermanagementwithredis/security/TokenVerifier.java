@@ -0,0 +1,150 @@
+package com.example.usermanagementwithredis.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Verifies bearer tokens with a parser built once at startup and remembers
+ * the verified result by token digest until the token expires, so repeated
+ * requests with the same token skip the signature check entirely. Every verification
+ * is timed under token.verification, tagged with whether it was cached, signature
+ * checked or rejected.
+ */
+@Component
+public class TokenVerifier {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final Key signingKey;
+    private final JwtParser parser;
+    private final String separator;
+    private final String authoritiesKey;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+    private final boolean cacheEnabled;
+    private final Timer cachedTimer;
+    private final Timer signatureTimer;
+    private final Timer rejectedTimer;
+
+    @Autowired
+    public TokenVerifier(@Value("${security.token-key}") String tokenKey,
+                         @Value("${security.separator}") String separator,
+                         @Value("${security.authorities-key}") String authoritiesKey,
+                         @Value("${security.token-cache.maximum-size}") long maximumSize,
+                         MeterRegistry meterRegistry) {
+        // Same key bytes jjwt derives when signing with the base64 string key
+        this.signingKey = new SecretKeySpec(TextCodec.BASE64.decode(tokenKey), SignatureAlgorithm.HS256.getJcaName());
+        this.parser = Jwts.parser().setSigningKey(signingKey);
+        this.separator = separator;
+        this.authoritiesKey = authoritiesKey;
+        // A maximum size of 0 turns the cache off and every token has its signature checked
+        this.cacheEnabled = maximumSize > 0;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.getExpiration() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "tokens");
+        this.cachedTimer = Timer.builder("token.verification").tag("result", "cached").register(meterRegistry);
+        this.signatureTimer = Timer.builder("token.verification").tag("result", "signature").register(meterRegistry);
+        this.rejectedTimer = Timer.builder("token.verification").tag("result", "rejected").register(meterRegistry);
+    }
+
+    public Key getSigningKey() {
+        return signingKey;
+    }
+
+    public VerifiedToken verify(String token) {
+        long start = System.nanoTime();
+        Timer timer = rejectedTimer;
+        try {
+            String digest = cacheEnabled ? digest(token) : null;
+            VerifiedToken verifiedToken = digest != null ? verifiedTokens.getIfPresent(digest) : null;
+            if(verifiedToken != null) {
+                timer = cachedTimer;
+            } else {
+                verifiedToken = parse(token);
+                if(verifiedToken != null) {
+                    timer = signatureTimer;
+                    if(digest != null) {
+                        verifiedTokens.put(digest, verifiedToken);
+                    }
+                }
+            }
+            return verifiedToken;
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public long getHitCount() {
+        return verifiedTokens.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return verifiedTokens.stats().missCount();
+    }
+
+    private VerifiedToken parse(String token) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        TokenSubject subject = TokenSubject.parse(claims.getSubject(), separator);
+        VerifiedToken verifiedToken = null;
+        if(subject != null) {
+            Object issuedAtMillis = claims.get(TokenIssuer.ISSUED_AT_MILLIS_CLAIM);
+            long issuedAt = issuedAtMillis instanceof Number ? ((Number) issuedAtMillis).longValue()
+                    : claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0;
+            Object roleMask = claims.get(authoritiesKey);
+            Object securityVersion = claims.get(TokenIssuer.SECURITY_VERSION_CLAIM);
+            verifiedToken = new VerifiedToken(subject.getId(), subject.getEmail(), roleMask instanceof Number ? ((Number) roleMask).longValue() : null,
+                    claims.getId(), issuedAt, securityVersion instanceof Number ? ((Number) securityVersion).longValue() : null,
+                    claims.getExpiration().getTime());
+        }
+        return verifiedToken;
+    }
+
+    private static String digest(String token) {
+        byte[] hash = DIGEST.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.User;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+/*
+ * UserDetails that keeps the loaded entity, so the login flow can issue the token
+ * from the same read that was used to check the credentials.
+ */
+@Getter
+public class UserPrincipal implements UserDetails {
+
+    private final User user;
+    private final List<GrantedAuthority> authorities;
+
+    public UserPrincipal(User user, List<GrantedAuthority> authorities) {
+        this.user = user;
+        this.authorities = authorities;
+    }
+
+    @Override
+    public String getPassword() {
+        return user.getProtectedPassword();
+    }
+
+    @Override
+    public String getUsername() {
+        return user.getEmail();
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
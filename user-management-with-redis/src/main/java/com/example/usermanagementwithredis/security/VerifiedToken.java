@@ -0,0 +1,22 @@
+package com.example.usermanagementwithredis.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class VerifiedToken {
+    private final Long id;
+    private final String email;
+    // Roles as a RoleCatalog mask, absent from tokens that carried role names
+    private final Long roleMask;
+    // jti claim, absent from tokens issued before revocation existed
+    private final String tokenId;
+    // iatms claim, or iat truncated to the second for tokens issued before it existed
+    private final long issuedAt;
+    // sv claim, the user's security version when the token was issued
+    private final Long securityVersion;
+    private final long expiration;
+}
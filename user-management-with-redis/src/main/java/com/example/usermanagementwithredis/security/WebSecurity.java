@@ -1,7 +1,7 @@
 package com.example.usermanagementwithredis.security;
 
-import com.example.usermanagementwithredis.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -10,17 +10,25 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 @EnableWebSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class WebSecurity extends WebSecurityConfigurerAdapter {
 
-    private final UserService userService;
+    private final PrincipalCache principalCache;
+    private final TokenVerifier tokenVerifier;
+    private final TokenRevocations tokenRevocations;
+    private final StatelessClaims statelessClaims;
+    private final PooledBCryptPasswordEncoder passwordEncoder;
 
     @Autowired
-    public WebSecurity(UserService userService) {
-        this.userService = userService;
+    public WebSecurity(PrincipalCache principalCache, TokenVerifier tokenVerifier, TokenRevocations tokenRevocations, StatelessClaims statelessClaims, PooledBCryptPasswordEncoder passwordEncoder) {
+        this.principalCache = principalCache;
+        this.tokenVerifier = tokenVerifier;
+        this.tokenRevocations = tokenRevocations;
+        this.statelessClaims = statelessClaims;
+        this.passwordEncoder = passwordEncoder;
     }
 
     @Override
@@ -36,12 +44,12 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
 
     @Bean
     public AuthorizationFilter provideAuthorizationFilter() throws Exception {
-        return new AuthorizationFilter(authenticationManager(), userService);
+        return new AuthorizationFilter(authenticationManager(), principalCache, tokenVerifier, tokenRevocations, statelessClaims);
     }
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userDetailsService()).passwordEncoder(provideBCryptPasswordEncoder());
+        auth.userDetailsService(userDetailsService()).passwordEncoder(passwordEncoder);
         super.configure(auth);
     }
 
@@ -49,9 +57,4 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
     public AuthenticationManager provideAuthenticationManager() throws Exception {
         return authenticationManager();
     }
-
-    @Bean
-    public BCryptPasswordEncoder provideBCryptPasswordEncoder() {
-        return new BCryptPasswordEncoder();
-    }
 }
@@ -4,50 +4,122 @@ import com.example.usermanagementwithredis.entities.Role;
 import com.example.usermanagementwithredis.entities.User;
 import com.example.usermanagementwithredis.repositories.RoleRepository;
 import com.example.usermanagementwithredis.repositories.UserRepository;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 @Component
 public class DatabaseSeeder {
 
+    private final Logger logger = LoggerFactory.getLogger(DatabaseSeeder.class);
     private final BCryptPasswordEncoder passwordEncoder;
     private final RoleRepository roleRepository;
     private final UserRepository userRepository;
+    private final RoleCatalog roleCatalog;
+    private final boolean migrateStorage;
 
     @Autowired
-    public DatabaseSeeder(BCryptPasswordEncoder passwordEncoder, RoleRepository roleRepository, UserRepository userRepository) {
+    public DatabaseSeeder(BCryptPasswordEncoder passwordEncoder, RoleRepository roleRepository, UserRepository userRepository, RoleCatalog roleCatalog,
+                          @Value("${users.storage.migrate}") boolean migrateStorage) {
         this.passwordEncoder = passwordEncoder;
         this.roleRepository = roleRepository;
         this.userRepository = userRepository;
+        this.roleCatalog = roleCatalog;
+        this.migrateStorage = migrateStorage;
     }
 
     @EventListener
     public void seedDatabase(ContextRefreshedEvent event) {
         seedRoles();
         seedUsers();
+        migrateStorage();
+        indexSearch();
     }
 
     private void seedRoles() {
+        boolean changed = false;
         if(roleRepository.count() == 0) {
             Role role = new Role(Role.ADMINISTRATOR);
             roleRepository.save(role);
 
             role = new Role(Role.GUEST);
             roleRepository.save(role);
+
+            changed = true;
+        }
+        changed |= assignRoleBits();
+
+        if(changed) {
+            roleCatalog.bumpVersion();
+        } else {
+            roleCatalog.refresh();
+        }
+    }
+
+    // Roles without a mask bit get the lowest free ones in id order, so every node would pick the same
+    private boolean assignRoleBits() {
+        List<Role> roles = new ArrayList<>();
+        roleRepository.findAll().forEach(roles::add);
+        roles.removeIf(Objects::isNull);
+        roles.sort(Comparator.comparing(Role::getId));
+
+        long used = 0;
+        for(Role role : roles) {
+            if(role.getBit() != null) {
+                used |= 1L << role.getBit();
+            }
         }
+        boolean assigned = false;
+        for(Role role : roles) {
+            if(role.getBit() == null) {
+                if(used == -1L) {
+                    throw new IllegalStateException("No role bit left for role " + role.getName());
+                }
+                int bit = Long.numberOfTrailingZeros(~used);
+                role.setBit(bit);
+                roleRepository.save(role);
+                used |= 1L << bit;
+                assigned = true;
+                logger.info("Role {} assigned mask bit {}", role.getName(), bit);
+            }
+        }
+        return assigned;
     }
 
     private void seedUsers() {
         if(userRepository.count() == 0) {
-            Role admin = roleRepository.findByName(Role.ADMINISTRATOR).orElse(null);
+            Role admin = roleCatalog.getByName(Role.ADMINISTRATOR);
             User user = new User("Root", "Admin", "root@gmail.com", passwordEncoder.encode("root"), Set.of(admin));
             userRepository.save(user);
         }
     }
 
+    // Brings users stored in another layout to the one of users.storage.format, when asked to or when the layout of the format changed
+    private void migrateStorage() {
+        if(migrateStorage || userRepository.isStorageOutdated()) {
+            long rewritten = userRepository.rewriteStorage();
+            logger.info("Rewrote {} users in the configured storage format", rewritten);
+        }
+    }
+
+    // Users stored before the search index existed, read once the role catalog can decode them
+    private void indexSearch() {
+        if(userRepository.isSearchIndexOutdated()) {
+            long indexed = userRepository.rebuildSearchIndex();
+            logger.info("Built the user search index, {} users added", indexed);
+        }
+    }
+
 }
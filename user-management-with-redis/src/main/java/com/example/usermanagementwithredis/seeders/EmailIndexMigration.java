@@ -0,0 +1,37 @@
+package com.example.usermanagementwithredis.seeders;
+
+import com.example.usermanagementwithredis.repositories.EmailIndex;
+import com.example.usermanagementwithredis.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/*
+ * Rebuilds the email index when it was built for another shard count, or before it was sharded.
+ * Logins and email uniqueness depend on the index, so this runs once the beans are ready but
+ * before the web server starts, unlike DatabaseSeeder which runs when requests are already served.
+ */
+@Component
+public class EmailIndexMigration implements SmartInitializingSingleton {
+
+    private final Logger logger = LoggerFactory.getLogger(EmailIndexMigration.class);
+    private final UserRepository userRepository;
+    private final EmailIndex emailIndex;
+
+    @Autowired
+    public EmailIndexMigration(UserRepository userRepository, EmailIndex emailIndex) {
+        this.userRepository = userRepository;
+        this.emailIndex = emailIndex;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if(userRepository.isEmailIndexOutdated()) {
+            long indexed = userRepository.rebuildEmailIndex();
+            logger.info("Rebuilt the email index over {} shards, {} emails added", emailIndex.getShards(), indexed);
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.example.usermanagementwithredis.services;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.ReactiveUserRepository;
+import com.example.usermanagementwithredis.repositories.UserPage;
+import com.example.usermanagementwithredis.security.LoginThrottle;
+import com.example.usermanagementwithredis.security.PooledBCryptPasswordEncoder;
+import com.example.usermanagementwithredis.security.PrincipalCache;
+import com.example.usermanagementwithredis.security.SecurityVersions;
+import com.example.usermanagementwithredis.security.TokenIssuer;
+import com.example.usermanagementwithredis.security.TokenRevocations;
+import com.example.usermanagementwithredis.security.UserPrincipal;
+import com.example.usermanagementwithredis.security.VerifiedToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+ * Reactive counterpart of UserService. BCrypt work goes to the password hashing pool and is
+ * awaited as a future, and Redis is only called through the reactive template, so event loop
+ * threads never hash or block on Redis.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserService implements ReactiveUserDetailsService {
+
+    private final ReactiveUserRepository userRepository;
+    private final RoleCatalog roleCatalog;
+    private final UserMapper mapper;
+    private final PooledBCryptPasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
+    private final TokenIssuer tokenIssuer;
+    private final TokenRevocations tokenRevocations;
+    private final SecurityVersions securityVersions;
+    private final UserJsonCache userJsonCache;
+    private final LoginThrottle loginThrottle;
+    private final UserRules userRules;
+    // Checked against when the email is unknown, so that answer costs the same BCrypt work as a wrong password
+    private final String missingUserPassword;
+
+    @Value("${security.token-type}")
+    private String tokenType;
+    @Value("${users.pagination.default-size}")
+    private int defaultPageSize;
+    @Value("${users.pagination.max-size}")
+    private int maxPageSize;
+
+    @Autowired
+    public ReactiveUserService(ReactiveUserRepository userRepository, RoleCatalog roleCatalog, UserMapper mapper, PooledBCryptPasswordEncoder passwordEncoder, PrincipalCache principalCache, TokenIssuer tokenIssuer, TokenRevocations tokenRevocations, SecurityVersions securityVersions, UserJsonCache userJsonCache, LoginThrottle loginThrottle, UserRules userRules) {
+        this.userRepository = userRepository;
+        this.roleCatalog = roleCatalog;
+        this.mapper = mapper;
+        this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
+        this.tokenIssuer = tokenIssuer;
+        this.tokenRevocations = tokenRevocations;
+        this.securityVersions = securityVersions;
+        this.userJsonCache = userJsonCache;
+        this.loginThrottle = loginThrottle;
+        this.userRules = userRules;
+        this.missingUserPassword = passwordEncoder.encode("missing-user-password");
+    }
+
+    public Mono<LoginResponse> login(LoginRequest loginRequest, String clientAddress) {
+        // Throttled attempts are rejected before the user is read or any password hashing
+        return loginThrottle.acquireAsync(loginRequest.getEmail(), clientAddress)
+                .then(userRepository.findByEmail(loginRequest.getEmail()).map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .flatMap(found -> Mono.fromFuture(passwordEncoder.matchesAsync(loginRequest.getPassword(), found.map(User::getProtectedPassword).orElse(missingUserPassword)))
+                        .filter(matches -> matches && found.isPresent())
+                        .map(matches -> {
+                            User user = found.get();
+                            return new LoginResponse(user.getEmail(), tokenType, tokenIssuer.issue(user, roleCatalog.getMask(user.getRoles()), securityVersions.current(user.getId())));
+                        }));
+    }
+
+    @Override
+    public Mono<UserDetails> findByUsername(String username) {
+        return userRepository.findByEmail(username).map(user -> new UserPrincipal(user, getAuthorities(user)));
+    }
+
+    public Mono<UserPageResponse> getUsersPage(String cursor, Integer size) {
+        int pageSize = size != null ? Math.max(1, Math.min(size, maxPageSize)) : defaultPageSize;
+        return userRepository.findPage(cursor, pageSize)
+                .map(page -> new UserPageResponse(page.getUsers().stream().map(mapper::toResponse).collect(Collectors.toList()), page.getNextCursor()));
+    }
+
+    public Mono<UserPageResponse> searchUsers(String field, String prefix, String after, Integer size) {
+        int pageSize = size != null ? Math.max(1, Math.min(size, maxPageSize)) : defaultPageSize;
+        return userRepository.search(field, prefix, after, pageSize)
+                .map(page -> new UserPageResponse(page.getUsers().stream().map(mapper::toResponse).collect(Collectors.toList()), page.getNextCursor()));
+    }
+
+    public Flux<UserResponse> streamAllUsers() {
+        // Pages are requested one after the other as the previous one is written out
+        return userRepository.findPage(UserPage.FIRST_CURSOR, maxPageSize)
+                .expand(page -> page.isLast() ? Mono.empty() : userRepository.findPage(page.getNextCursor(), maxPageSize))
+                .concatMapIterable(UserPage::getUsers)
+                .map(mapper::toResponse);
+    }
+
+    public Mono<Boolean> isEmailAvailable(String email) {
+        return userRepository.isEmailClaimed(email).map(claimed -> !claimed);
+    }
+
+    public Mono<UserResponse> createUser(UserRequest userRequest) {
+        User user = mapper.toEntity(userRequest);
+        user.setRoles(userRules.rolesForCreate(userRequest));
+        return Mono.fromFuture(passwordEncoder.encodeAsync(userRequest.getPassword()))
+                .flatMap(protectedPassword -> {
+                    user.setProtectedPassword(protectedPassword);
+                    return userRepository.save(user);
+                })
+                .map(mapper::toResponse);
+    }
+
+    public boolean createUserRequestHasAdminRole(UserRequest userRequest) {
+        return userRules.hasAdminRole(userRequest);
+    }
+
+    public boolean createUserRequestHasAdminRole(User user) {
+        return userRules.hasAdminRole(user);
+    }
+
+    // Same tag as UserService.getUserETag, empty when the user has no version yet
+    public Mono<String> getUserETag(Long id) {
+        return userRepository.findVersion(id).map(userRules::userETag);
+    }
+
+    // Same lookup order as UserService.getUserJson, a null tag skips both copies
+    public Mono<EncodedJson> getUserJson(Long id, String etag) {
+        Mono<EncodedJson> cached = etag != null
+                ? Mono.justOrEmpty(userJsonCache.get(id, etag))
+                        .switchIfEmpty(userRepository.findJson(id)
+                                .defaultIfEmpty(new byte[0])
+                                .flatMap(stored -> Mono.justOrEmpty(userJsonCache.getStored(id, etag, stored))))
+                : Mono.empty();
+        return cached.switchIfEmpty(Mono.defer(() -> userRepository.findById(id)
+                .flatMap(user -> Mono.fromCallable(() -> userJsonCache.encode(id, etag, mapper.toResponse(user))))
+                .flatMap(body -> etag != null
+                        ? userRepository.saveJson(id, userJsonCache.toStored(body), userJsonCache.getTtl()).thenReturn(body)
+                        : Mono.just(body))));
+    }
+
+    public Mono<UserResponse> editUser(Long id, UserRequest userRequest) {
+        return userRepository.findById(id)
+                .flatMap(user -> Mono.fromFuture(passwordEncoder.encodeAsync(userRequest.getPassword()))
+                        .flatMap(protectedPassword -> {
+                            String previousEmail = user.getEmail();
+                            Set<Long> previousRoles = userRules.roleIds(user);
+                            user.setFirstName(userRequest.getFirstName());
+                            user.setLastName(userRequest.getLastName());
+                            user.setEmail(userRequest.getEmail());
+                            user.setProtectedPassword(protectedPassword);
+                            user.setRoles(userRules.rolesForEdit(userRequest));
+                            boolean securityChanged = !previousEmail.equals(user.getEmail()) || !previousRoles.equals(userRules.roleIds(user));
+                            return userRepository.save(user)
+                                    .flatMap(saved -> securityChanged
+                                            ? securityVersions.bumpAsync(id).thenReturn(saved)
+                                            : Mono.just(saved))
+                                    .flatMap(saved -> principalCache.invalidateAsync(previousEmail).thenReturn(saved))
+                                    .doOnNext(saved -> userJsonCache.invalidate(id));
+                        }))
+                .map(mapper::toResponse);
+    }
+
+    public Mono<Boolean> deleteUser(Long id) {
+        return userRepository.findById(id)
+                .flatMap(user -> userRepository.deleteById(id)
+                        // Tokens trusted from their claims would otherwise outlive the user
+                        .flatMap(deleted -> tokenRevocations.revokeAllAsync(id)
+                                // The bumped version stays behind as a tombstone, so no node keeps trusting the old one
+                                .then(securityVersions.bumpAsync(id))
+                                .then(principalCache.invalidateAsync(user.getEmail()))
+                                .thenReturn(deleted))
+                        .doOnNext(deleted -> userJsonCache.invalidate(id)))
+                .defaultIfEmpty(false);
+    }
+
+    public CurrentUserResponse getCurrentUser(User principal) {
+        return mapper.toCurrentUser(principal);
+    }
+
+    public Mono<Void> logout(VerifiedToken token) {
+        return tokenRevocations.revokeAsync(token);
+    }
+
+    public Mono<Boolean> revokeTokens(Long id) {
+        return userRepository.findById(id)
+                .flatMap(user -> tokenRevocations.revokeAllAsync(id).thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    private List<GrantedAuthority> getAuthorities(User user) {
+        return user.getRoles().stream().map(role -> roleCatalog.getAuthority(role.getName())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.usermanagementwithredis.services;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.repositories.RoleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/*
+ * Roles are a tiny, almost static set, so they are held in memory as an immutable
+ * snapshot. A version key in Redis is bumped whenever roles are written; nodes poll
+ * it and swap in a freshly loaded snapshot when it changes.
+ * Each role owns one bit of a long, so a set of roles travels as a mask; the roles and
+ * authorities of a mask are built once per snapshot and shared by every principal holding it,
+ * and the Administrator bit is resolved when the snapshot is built, so an admin check is one AND.
+ */
+@Component
+public class RoleCatalog {
+
+    private final Logger logger = LoggerFactory.getLogger(RoleCatalog.class);
+    private final RoleRepository roleRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final String versionKey;
+    // Serializes the loads without a monitor, which would pin a virtual thread across the Redis calls
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot = new Snapshot(null, List.of());
+
+    @Autowired
+    public RoleCatalog(RoleRepository roleRepository, StringRedisTemplate redisTemplate, @Value("${roles.catalog.version-key}") String versionKey) {
+        this.roleRepository = roleRepository;
+        this.redisTemplate = redisTemplate;
+        this.versionKey = versionKey;
+    }
+
+    public List<Role> getAll() {
+        return snapshot.roles;
+    }
+
+    public Role getById(Long id) {
+        return id != null ? snapshot.byId.get(id) : null;
+    }
+
+    public Role getByName(String name) {
+        return name != null ? snapshot.byName.get(name) : null;
+    }
+
+    // Mask of the given roles, or null when one of them has no bit in this snapshot
+    public Long getMask(Collection<Role> roles) {
+        long mask = 0;
+        if(roles != null) {
+            for(Role role : roles) {
+                Role known = getById(role.getId());
+                if(known == null || known.getBit() == null) {
+                    return null;
+                }
+                mask |= 1L << known.getBit();
+            }
+        }
+        return mask;
+    }
+
+    // Roles of a mask, or null when a bit set in the mask belongs to no role of this snapshot
+    public Set<Role> getRoles(long mask) {
+        MaskedRoles masked = snapshot.getMasked(mask);
+        return masked != null ? masked.roles : null;
+    }
+
+    public List<GrantedAuthority> getAuthorities(long mask) {
+        MaskedRoles masked = snapshot.getMasked(mask);
+        return masked != null ? masked.authorities : null;
+    }
+
+    public boolean isAdministrator(long mask) {
+        return (mask & snapshot.administratorBit) != 0;
+    }
+
+    public GrantedAuthority getAuthority(String name) {
+        GrantedAuthority authority = snapshot.authorities.get(name);
+        return authority != null ? authority : new SimpleGrantedAuthority(name);
+    }
+
+    public String getVersion() {
+        return snapshot.version;
+    }
+
+    public void bumpVersion() {
+        redisTemplate.opsForValue().increment(versionKey);
+        refresh();
+    }
+
+    // Loads are serialized, so a snapshot read later never gets replaced by one read earlier
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            load();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    // A poll that finds a load already running leaves the change to it, or to the next poll
+    @Scheduled(fixedDelayString = "${roles.catalog.refresh-interval}")
+    public void refreshIfChanged() {
+        try {
+            String version = redisTemplate.opsForValue().get(versionKey);
+            if(!Objects.equals(version, snapshot.version) && refreshLock.tryLock()) {
+                try {
+                    load();
+                } finally {
+                    refreshLock.unlock();
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("Exception captured", ex);
+        }
+    }
+
+    private void load() {
+        String version = redisTemplate.opsForValue().get(versionKey);
+        List<Role> roles = StreamSupport.stream(roleRepository.findAll().spliterator(), false).filter(Objects::nonNull).collect(Collectors.toList());
+        snapshot = new Snapshot(version, roles);
+        logger.info("Role catalog loaded with {} roles at version {}", roles.size(), version);
+    }
+
+    private static final class Snapshot {
+        private final String version;
+        private final List<Role> roles;
+        private final Map<Long, Role> byId;
+        private final Map<String, Role> byName;
+        private final Map<String, GrantedAuthority> authorities;
+        private final Role[] byBit = new Role[Long.SIZE];
+        private final long knownBits;
+        // 0 while the Administrator role has no bit, so no mask passes
+        private final long administratorBit;
+        private final Map<Long, MaskedRoles> byMask = new ConcurrentHashMap<>();
+
+        private Snapshot(String version, List<Role> roles) {
+            this.version = version;
+            this.roles = List.copyOf(roles);
+            this.byId = roles.stream().collect(Collectors.toUnmodifiableMap(Role::getId, Function.identity()));
+            this.byName = roles.stream().collect(Collectors.toUnmodifiableMap(Role::getName, Function.identity()));
+            this.authorities = roles.stream().collect(Collectors.toUnmodifiableMap(Role::getName, role -> new SimpleGrantedAuthority(role.getName())));
+            long bits = 0;
+            long administrator = 0;
+            for(Role role : roles) {
+                if(role.getBit() != null) {
+                    byBit[role.getBit()] = role;
+                    bits |= 1L << role.getBit();
+                    if(Role.ADMINISTRATOR.equals(role.getName())) {
+                        administrator = 1L << role.getBit();
+                    }
+                }
+            }
+            this.knownBits = bits;
+            this.administratorBit = administrator;
+        }
+
+        // Only as many entries as role combinations actually held by users
+        private MaskedRoles getMasked(long mask) {
+            if((mask & ~knownBits) != 0) {
+                return null;
+            }
+            MaskedRoles masked = byMask.get(mask);
+            return masked != null ? masked : byMask.computeIfAbsent(mask, this::mask);
+        }
+
+        private MaskedRoles mask(long mask) {
+            Set<Role> maskRoles = new HashSet<>();
+            List<GrantedAuthority> maskAuthorities = new ArrayList<>();
+            for(long bits = mask; bits != 0; bits &= bits - 1) {
+                Role role = byBit[Long.numberOfTrailingZeros(bits)];
+                maskRoles.add(role);
+                maskAuthorities.add(authorities.get(role.getName()));
+            }
+            return new MaskedRoles(Set.copyOf(maskRoles), List.copyOf(maskAuthorities));
+        }
+    }
+
+    private static final class MaskedRoles {
+        private final Set<Role> roles;
+        private final List<GrantedAuthority> authorities;
+
+        private MaskedRoles(Set<Role> roles, List<GrantedAuthority> authorities) {
+            this.roles = roles;
+            this.authorities = authorities;
+        }
+    }
+
+}
@@ -1,31 +1,48 @@
 package com.example.usermanagementwithredis.services;
 
+import com.example.usermanagementwithredis.dtos.EncodedJson;
+import com.example.usermanagementwithredis.dtos.RoleMapper;
 import com.example.usermanagementwithredis.dtos.RoleResponse;
-import com.example.usermanagementwithredis.entities.Role;
-import com.example.usermanagementwithredis.repositories.RoleRepository;
-import org.modelmapper.ModelMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Service
 public class RoleService {
 
-    private final ModelMapper modelMapper;
-    private final RoleRepository roleRepository;
+    private final RoleMapper roleMapper;
+    private final RoleCatalog roleCatalog;
+    private final ObjectMapper objectMapper;
+
+    // Role list serialized for the catalog version in its tag
+    private volatile EncodedJson encodedRoles;
 
     @Autowired
-    public RoleService(ModelMapper modelMapper, RoleRepository roleRepository) {
-        this.modelMapper = modelMapper;
-        this.roleRepository = roleRepository;
+    public RoleService(RoleMapper roleMapper, RoleCatalog roleCatalog, ObjectMapper objectMapper) {
+        this.roleMapper = roleMapper;
+        this.roleCatalog = roleCatalog;
+        this.objectMapper = objectMapper;
+    }
+
+    // Serialized once per catalog version, the tag is null until the catalog has a version
+    public EncodedJson getAllJson() throws JsonProcessingException {
+        String version = roleCatalog.getVersion();
+        String etag = version != null ? "\"" + version + "\"" : null;
+        EncodedJson roles = encodedRoles;
+        if(roles == null || !Objects.equals(roles.getEtag(), etag)) {
+            roles = new EncodedJson(etag, objectMapper.writeValueAsBytes(getAll()));
+            encodedRoles = roles;
+        }
+        return roles;
     }
 
     public List<RoleResponse> getAll() {
-        Iterable<Role> roles = roleRepository.findAll();
-        return StreamSupport.stream(roles.spliterator(), false).map(r -> modelMapper.map(r, RoleResponse.class)).collect(Collectors.toList());
+        return roleCatalog.getAll().stream().map(roleMapper::toResponse).collect(Collectors.toList());
     }
 
 }
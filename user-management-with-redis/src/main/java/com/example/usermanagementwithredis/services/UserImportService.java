@@ -0,0 +1,210 @@
+package com.example.usermanagementwithredis.services;
+
+import com.example.usermanagementwithredis.dtos.UserImportResult;
+import com.example.usermanagementwithredis.dtos.UserMapper;
+import com.example.usermanagementwithredis.dtos.UserRequest;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.PartialSaveException;
+import com.example.usermanagementwithredis.repositories.UserRepository;
+import com.example.usermanagementwithredis.security.PooledBCryptPasswordEncoder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+ * Imports users from an NDJSON stream, one UserRequest per line. Records are handled in
+ * chunks: duplicates are checked with one lookup of the email claims, passwords are hashed in parallel
+ * on the import hashing pool and the users are written in one pipeline, then a result line per record
+ * is streamed back.
+ */
+@Service
+public class UserImportService {
+
+    private final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+    private final UserRepository userRepository;
+    private final RoleCatalog roleCatalog;
+    private final UserMapper mapper;
+    private final PooledBCryptPasswordEncoder passwordEncoder;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${users.import.chunk-size}")
+    private int chunkSize;
+
+    @Autowired
+    public UserImportService(UserRepository userRepository, RoleCatalog roleCatalog, UserMapper mapper, PooledBCryptPasswordEncoder passwordEncoder, ObjectMapper objectMapper, Validator validator) {
+        this.userRepository = userRepository;
+        this.roleCatalog = roleCatalog;
+        this.mapper = mapper;
+        this.passwordEncoder = passwordEncoder;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    public void importUsers(InputStream inputStream, OutputStream outputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        List<String> lines = new ArrayList<>(chunkSize);
+        long firstLine = 1;
+        String text;
+        while((text = reader.readLine()) != null) {
+            lines.add(text);
+            if(lines.size() == chunkSize) {
+                writeResults(importLines(firstLine, lines), generator);
+                firstLine += lines.size();
+                lines.clear();
+            }
+        }
+        if(!lines.isEmpty()) {
+            writeResults(importLines(firstLine, lines), generator);
+        }
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    // Each chunk goes through the pipelined blocking import, so it runs off the event loop
+    public Flux<UserImportResult> importUsers(Flux<String> lines) {
+        return lines.buffer(chunkSize)
+                .index()
+                .concatMap(chunk -> Mono.fromCallable(() -> importLines(chunk.getT1() * chunkSize + 1, chunk.getT2()))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .flatMapIterable(results -> results);
+    }
+
+    // Imports consecutive lines of the stream starting at firstLine, blank lines are skipped but still counted
+    private List<UserImportResult> importLines(long firstLine, List<String> lines) {
+        List<ImportRecord> chunk = new ArrayList<>(lines.size());
+        for(int i = 0; i < lines.size(); i++) {
+            if(!lines.get(i).isBlank()) {
+                chunk.add(parse(firstLine + i, lines.get(i)));
+            }
+        }
+        if(!chunk.isEmpty()) {
+            importChunk(chunk);
+        }
+        return chunk.stream().map(record -> record.result).collect(Collectors.toList());
+    }
+
+    private void writeResults(List<UserImportResult> results, JsonGenerator generator) throws IOException {
+        for(UserImportResult result : results) {
+            generator.writeObject(result);
+        }
+        generator.flush();
+    }
+
+    private ImportRecord parse(long line, String text) {
+        ImportRecord record = new ImportRecord(line);
+        try {
+            UserRequest request = objectMapper.readValue(text, UserRequest.class);
+            Set<ConstraintViolation<UserRequest>> violations = validator.validate(request);
+            if(violations.isEmpty()) {
+                record.request = request;
+            } else {
+                record.finish(UserImportResult.INVALID, request.getEmail(), violations.iterator().next().getMessage());
+            }
+        } catch (JsonProcessingException ex) {
+            record.finish(UserImportResult.INVALID, null, "Malformed JSON record");
+        }
+        return record;
+    }
+
+    private void importChunk(List<ImportRecord> chunk) {
+        List<ImportRecord> pending = chunk.stream().filter(record -> record.result == null).collect(Collectors.toList());
+
+        // Repeated emails inside the chunk first, then the rest against the email claims in one round trip
+        Set<String> seen = new HashSet<>();
+        for(ImportRecord record : pending) {
+            if(!seen.add(record.request.getEmail())) {
+                record.finish(UserImportResult.DUPLICATED, record.request.getEmail(), "Email repeated in the import");
+            }
+        }
+        pending.removeIf(record -> record.result != null);
+        if(!pending.isEmpty()) {
+            Set<String> existing = userRepository.findExistingEmails(pending.stream().map(record -> record.request.getEmail()).collect(Collectors.toList()));
+            for(ImportRecord record : pending) {
+                if(existing.contains(record.request.getEmail())) {
+                    record.finish(UserImportResult.DUPLICATED, record.request.getEmail(), "Email already registered");
+                }
+            }
+            pending.removeIf(record -> record.result != null);
+        }
+
+        if(!pending.isEmpty()) {
+            try {
+                List<String> hashes = passwordEncoder.encodeAll(pending.stream().map(record -> record.request.getPassword()).collect(Collectors.toList()));
+                List<User> users = new ArrayList<>(pending.size());
+                for(int i = 0; i < pending.size(); i++) {
+                    User user = mapper.toEntity(pending.get(i).request);
+                    user.setProtectedPassword(hashes.get(i));
+                    user.setRoles(resolveRoles(pending.get(i).request));
+                    users.add(user);
+                }
+                Set<User> failed = Set.of();
+                try {
+                    userRepository.saveAll(users);
+                } catch (PartialSaveException ex) {
+                    logger.error("Exception captured", ex);
+                    failed = new HashSet<>(ex.getFailed());
+                }
+                for(int i = 0; i < pending.size(); i++) {
+                    User user = users.get(i);
+                    // Users that lost the email claim to a concurrent write come back without an id
+                    if(failed.contains(user)) {
+                        pending.get(i).finish(UserImportResult.FAILED, user.getEmail(), "User could not be stored");
+                    } else if(user.getId() != null) {
+                        pending.get(i).finish(UserImportResult.CREATED, user.getEmail(), null);
+                        pending.get(i).result.setId(user.getId());
+                    } else {
+                        pending.get(i).finish(UserImportResult.DUPLICATED, user.getEmail(), "Email already registered");
+                    }
+                }
+            } catch (Exception ex) {
+                logger.error("Exception captured", ex);
+                pending.forEach(record -> record.finish(UserImportResult.FAILED, record.request.getEmail(), "User could not be stored"));
+            }
+        }
+    }
+
+    private Set<Role> resolveRoles(UserRequest request) {
+        Set<Role> roles;
+        if(request.getRoles() == null || request.getRoles().isEmpty()) {
+            roles = Set.of(roleCatalog.getByName(Role.GUEST));
+        } else {
+            roles = request.getRoles().stream().map(it -> roleCatalog.getById(it.getId())).filter(Objects::nonNull).collect(Collectors.toSet());
+        }
+        return roles;
+    }
+
+    private static class ImportRecord {
+        private final long line;
+        private UserRequest request;
+        private UserImportResult result;
+
+        ImportRecord(long line) {
+            this.line = line;
+        }
+
+        void finish(String status, String email, String message) {
+            result = new UserImportResult(line, email, status, null, message);
+        }
+    }
+
+}
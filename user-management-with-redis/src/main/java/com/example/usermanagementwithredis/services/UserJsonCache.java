@@ -0,0 +1,108 @@
+package com.example.usermanagementwithredis.services;
+
+import com.example.usermanagementwithredis.dtos.EncodedJson;
+import com.example.usermanagementwithredis.dtos.UserResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+
+/*
+ * JSON bodies of GET /users/{id}, serialized once and kept with the ETag they were serialized for,
+ * in process and in Redis under users:json:<id>, where the user repositories read and write them.
+ * A body is only served while its tag is still the user's current one, so a save on any node makes
+ * every copy stale at once. The save and delete scripts also drop the Redis copy, and the services
+ * the local one. Redis lookups are counted under users.json-cache.redis by result.
+ */
+@Component
+public class UserJsonCache {
+
+    private static final byte SEPARATOR = '\n';
+
+    private final ObjectMapper objectMapper;
+    private final Cache<Long, EncodedJson> bodies;
+    private final Duration ttl;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+
+    @Autowired
+    public UserJsonCache(ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${users.json-cache.maximum-size}") long maximumSize,
+                         @Value("${users.json-cache.ttl}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.bodies = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, bodies, "user-json");
+        this.redisHits = Counter.builder("users.json-cache.redis").tag("result", "hit").register(meterRegistry);
+        this.redisMisses = Counter.builder("users.json-cache.redis").tag("result", "miss").register(meterRegistry);
+    }
+
+    // Lifetime of the Redis copies, the same as the local ones
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public EncodedJson get(Long id, String etag) {
+        EncodedJson body = bodies.getIfPresent(id);
+        return body != null && body.getEtag().equals(etag) ? body : null;
+    }
+
+    // The Redis copy of a body as stored by toStored, kept locally when it is still current
+    public EncodedJson getStored(Long id, String etag, byte[] stored) {
+        EncodedJson body = null;
+        int separator = stored != null ? indexOf(stored, SEPARATOR) : -1;
+        if(separator >= 0 && etag.equals(new String(stored, 0, separator, StandardCharsets.UTF_8))) {
+            body = new EncodedJson(etag, Arrays.copyOfRange(stored, separator + 1, stored.length));
+            bodies.put(id, body);
+        }
+        (body != null ? redisHits : redisMisses).increment();
+        return body;
+    }
+
+    // The tag, a newline and the body, as kept in Redis
+    public byte[] toStored(EncodedJson body) {
+        byte[] etag = body.getEtag().getBytes(StandardCharsets.UTF_8);
+        byte[] stored = Arrays.copyOf(etag, etag.length + 1 + body.getJson().length);
+        stored[etag.length] = SEPARATOR;
+        System.arraycopy(body.getJson(), 0, stored, etag.length + 1, body.getJson().length);
+        return stored;
+    }
+
+    // Bodies without a tag belong to users stored before versions existed and are not cached
+    public EncodedJson encode(Long id, String etag, UserResponse user) throws JsonProcessingException {
+        EncodedJson body = new EncodedJson(etag, objectMapper.writeValueAsBytes(user));
+        if(etag != null) {
+            bodies.put(id, body);
+        }
+        return body;
+    }
+
+    public void invalidate(Long id) {
+        bodies.invalidate(id);
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for(int i = 0; i < bytes.length; i++) {
+            if(bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
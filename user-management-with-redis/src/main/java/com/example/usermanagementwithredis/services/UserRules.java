@@ -0,0 +1,73 @@
+package com.example.usermanagementwithredis.services;
+
+import com.example.usermanagementwithredis.dtos.UserRequest;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+ * Decisions UserService and ReactiveUserService share: which roles a created or edited user gets,
+ * whether a request or a principal holds the Administrator role, and the ETag of a user version.
+ */
+@Component
+public class UserRules {
+
+    private final RoleCatalog roleCatalog;
+
+    @Autowired
+    public UserRules(RoleCatalog roleCatalog) {
+        this.roleCatalog = roleCatalog;
+    }
+
+    // Requested roles the catalog knows, Guest when none were requested
+    public Set<Role> rolesForCreate(UserRequest userRequest) {
+        if(userRequest.getRoles() == null || userRequest.getRoles().isEmpty()) {
+            return Set.of(roleCatalog.getByName(Role.GUEST));
+        }
+        return knownRoles(userRequest);
+    }
+
+    // Requested roles the catalog knows, Guest when roles were left out or none of them is known
+    public Set<Role> rolesForEdit(UserRequest userRequest) {
+        Set<Role> roles = null;
+        if(userRequest.getRoles() != null && !userRequest.getRoles().isEmpty()) {
+            roles = knownRoles(userRequest);
+        }
+        if(userRequest.getRoles() == null || (roles != null && roles.isEmpty())) {
+            roles = Set.of(roleCatalog.getByName(Role.GUEST));
+        }
+        return roles;
+    }
+
+    public boolean hasAdminRole(UserRequest userRequest) {
+        Role adminRole = roleCatalog.getByName(Role.ADMINISTRATOR);
+        return userRequest.getRoles() != null && userRequest.getRoles().stream().anyMatch(it -> Objects.equals(it.getId(), adminRole.getId()));
+    }
+
+    public boolean hasAdminRole(User user) {
+        Role adminRole = roleCatalog.getByName(Role.ADMINISTRATOR);
+        return user.getRoles() != null && user.getRoles().stream().anyMatch(it -> Objects.equals(it.getId(), adminRole.getId()));
+    }
+
+    /*
+     * Strong ETag of the user's representation: the user's version and the role catalog version, which
+     * covers the role names in the body.
+     */
+    public String userETag(long version) {
+        return "\"" + version + "." + Objects.toString(roleCatalog.getVersion(), "0") + "\"";
+    }
+
+    public Set<Long> roleIds(User user) {
+        return user.getRoles() != null ? user.getRoles().stream().map(Role::getId).collect(Collectors.toSet()) : Set.of();
+    }
+
+    private Set<Role> knownRoles(UserRequest userRequest) {
+        return userRequest.getRoles().stream().map(it -> roleCatalog.getById(it.getId())).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+}
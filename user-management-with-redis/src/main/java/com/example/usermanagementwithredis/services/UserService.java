@@ -1,174 +1,218 @@
 package com.example.usermanagementwithredis.services;
 
 import com.example.usermanagementwithredis.dtos.*;
-import com.example.usermanagementwithredis.entities.Role;
 import com.example.usermanagementwithredis.entities.User;
-import com.example.usermanagementwithredis.repositories.RoleRepository;
+import com.example.usermanagementwithredis.repositories.UserPage;
 import com.example.usermanagementwithredis.repositories.UserRepository;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import org.modelmapper.ModelMapper;
+import com.example.usermanagementwithredis.security.LoginThrottle;
+import com.example.usermanagementwithredis.security.PasswordHashingRejectedException;
+import com.example.usermanagementwithredis.security.PrincipalCache;
+import com.example.usermanagementwithredis.security.SecurityVersions;
+import com.example.usermanagementwithredis.security.TokenIssuer;
+import com.example.usermanagementwithredis.security.TokenRevocations;
+import com.example.usermanagementwithredis.security.UserPrincipal;
+import com.example.usermanagementwithredis.security.VerifiedToken;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserService implements UserDetailsService {
 
     private final Logger logger = LoggerFactory.getLogger(UserService.class);
     private final UserRepository userRepository;
-    private final RoleRepository roleRepository;
+    private final RoleCatalog roleCatalog;
     private final AuthenticationManager authenticationManager;
-    private final ModelMapper mapper;
+    private final UserMapper mapper;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
+    private final ObjectMapper objectMapper;
+    private final TokenIssuer tokenIssuer;
+    private final TokenRevocations tokenRevocations;
+    private final SecurityVersions securityVersions;
+    private final UserJsonCache userJsonCache;
+    private final LoginThrottle loginThrottle;
+    private final UserRules userRules;
 
-    @Value("${security.token-key}")
-    private String tokenKey;
     @Value("${security.token-type}")
     private String tokenType;
-    @Value("${security.separator}")
-    private String separator;
-    @Value("${security.validity}")
-    private Long validity;
-    @Value("${security.authorities-key}")
-    private String authoritiesKey;
+    @Value("${users.pagination.default-size}")
+    private int defaultPageSize;
+    @Value("${users.pagination.max-size}")
+    private int maxPageSize;
 
     @Autowired
-    public UserService(UserRepository userRepository, RoleRepository roleRepository, @Lazy AuthenticationManager authenticationManager, ModelMapper mapper, @Lazy BCryptPasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, RoleCatalog roleCatalog, @Lazy AuthenticationManager authenticationManager, UserMapper mapper, @Lazy BCryptPasswordEncoder passwordEncoder, PrincipalCache principalCache, ObjectMapper objectMapper, TokenIssuer tokenIssuer, TokenRevocations tokenRevocations, SecurityVersions securityVersions, UserJsonCache userJsonCache, LoginThrottle loginThrottle, UserRules userRules) {
         this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
+        this.roleCatalog = roleCatalog;
         this.authenticationManager = authenticationManager;
         this.mapper = mapper;
         this.passwordEncoder = passwordEncoder;
+        this.principalCache = principalCache;
+        this.objectMapper = objectMapper;
+        this.tokenIssuer = tokenIssuer;
+        this.tokenRevocations = tokenRevocations;
+        this.securityVersions = securityVersions;
+        this.userJsonCache = userJsonCache;
+        this.loginThrottle = loginThrottle;
+        this.userRules = userRules;
     }
 
     public User getByEmail(String email) {
         return userRepository.findByEmail(email).orElse(null);
     }
 
-    public LoginResponse login(LoginRequest loginRequest) {
+    public LoginResponse login(LoginRequest loginRequest, String clientAddress) {
+        // Throttled attempts are rejected before any password hashing
+        loginThrottle.acquire(loginRequest.getEmail(), clientAddress);
         LoginResponse response = null;
         try {
             Authentication authentication = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword()));
-            User user = userRepository.findByEmail(loginRequest.getEmail()).orElse(null);
-            if(user != null) {
-                String rolesClaims = user.getRoles().stream().map(role -> role.getName()).collect(Collectors.joining(separator));
-                String subject = String.join(separator, String.valueOf(user.getId()), user.getEmail());
-                Claims claims = Jwts.claims();
-                claims.put(authoritiesKey, rolesClaims);
-                long currentTime = System.currentTimeMillis();
-                String token = Jwts.builder()
-                        .setClaims(claims)
-                        .setSubject(subject)
-                        .setIssuedAt(new Date(currentTime))
-                        .setExpiration(new Date(currentTime + validity))
-                        .signWith(SignatureAlgorithm.HS256, tokenKey)
-                        .compact();
+            // The principal was loaded while checking the credentials, so the token is built without another read
+            if(authentication.getPrincipal() instanceof UserPrincipal) {
+                UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+                User user = principal.getUser();
+                String token = tokenIssuer.issue(user, roleCatalog.getMask(user.getRoles()), securityVersions.current(user.getId()));
                 response = new LoginResponse(user.getEmail(), tokenType, token);
             }
+        } catch (PasswordHashingRejectedException ex) {
+            throw ex;
         } catch (Exception ex) {
             logger.error("Exception captured", ex);
         }
         return response;
     }
 
+    /*
+     * An unknown email has to throw: only then does the DaoAuthenticationProvider check the password against
+     * its own dummy hash, so the answer costs the same BCrypt work as a wrong password for a known email.
+     */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByEmail(username).orElse(null);
-        UserDetails userDetails = null;
-        if(user != null) {
-            List<GrantedAuthority> authorities = user.getRoles().stream().map(role -> new SimpleGrantedAuthority(role.getName())).collect(Collectors.toList());
-            userDetails = new org.springframework.security.core.userdetails.User(user.getEmail(), user.getProtectedPassword(), true, true, true, true, authorities);
+        if(user == null) {
+            throw new UsernameNotFoundException("No user with the given email");
         }
-        return userDetails;
+        List<GrantedAuthority> authorities = user.getRoles().stream().map(role -> roleCatalog.getAuthority(role.getName())).collect(Collectors.toList());
+        return new UserPrincipal(user, authorities);
     }
 
-    public List<UserResponse> getAllUsers() {
-        Iterable<User> users = userRepository.findAll();
-        List<UserResponse> response = null;
-        if(users.iterator().hasNext()) {
-            response = StreamSupport.stream(users.spliterator(), false).map(u -> mapper.map(u, UserResponse.class)).collect(Collectors.toList());
-        } else {
-            response = new ArrayList<>();
-        }
-        return response;
+    public UserPageResponse getUsersPage(String cursor, Integer size) {
+        int pageSize = size != null ? Math.max(1, Math.min(size, maxPageSize)) : defaultPageSize;
+        UserPage page = userRepository.findPage(cursor, pageSize);
+        List<UserResponse> users = page.getUsers().stream().map(mapper::toResponse).collect(Collectors.toList());
+        return new UserPageResponse(users, page.getNextCursor());
+    }
+
+    // Users whose field starts with the prefix, continuing after the search index member of the previous page
+    public UserPageResponse searchUsers(String field, String prefix, String after, Integer size) {
+        int pageSize = size != null ? Math.max(1, Math.min(size, maxPageSize)) : defaultPageSize;
+        UserPage page = userRepository.search(field, prefix, after, pageSize);
+        List<UserResponse> users = page.getUsers().stream().map(mapper::toResponse).collect(Collectors.toList());
+        return new UserPageResponse(users, page.getNextCursor());
+    }
+
+    public void writeAllUsers(OutputStream outputStream) throws IOException {
+        // Users are written as they are scanned, so memory stays flat regardless of the user count
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.writeStartArray();
+        String cursor = UserPage.FIRST_CURSOR;
+        do {
+            UserPage page = userRepository.findPage(cursor, maxPageSize);
+            for(User user : page.getUsers()) {
+                generator.writeObject(mapper.toResponse(user));
+            }
+            generator.flush();
+            cursor = page.getNextCursor();
+        } while(!UserPage.FIRST_CURSOR.equals(cursor));
+        generator.writeEndArray();
+        generator.flush();
     }
 
     public boolean isEmailAvailable(String email) {
-        User user = userRepository.findByEmail(email).orElse(null);
-        return user == null;
+        return !userRepository.isEmailClaimed(email);
     }
 
     public UserResponse createUser(UserRequest userRequest) {
-        User user = mapper.map(userRequest, User.class);
+        User user = mapper.toEntity(userRequest);
         user.setProtectedPassword(passwordEncoder.encode(userRequest.getPassword()));
-        if(userRequest.getRoles() == null || userRequest.getRoles().isEmpty()) {
-            Role guestRole = roleRepository.findByName(Role.GUEST).orElse(null);
-            user.setRoles(Set.of(guestRole));
-        } else {
-            Set<Role> roles = userRequest.getRoles().stream().map(it -> roleRepository.findById(it.getId()).orElse(null)).filter(Objects::nonNull).collect(Collectors.toSet());
-            user.setRoles(roles);
-        }
+        user.setRoles(userRules.rolesForCreate(userRequest));
         userRepository.save(user);
-        UserResponse response = mapper.map(user, UserResponse.class);
+        UserResponse response = mapper.toResponse(user);
         return response;
     }
 
     public boolean createUserRequestHasAdminRole(UserRequest userRequest) {
-        Role adminRole = roleRepository.findByName(Role.ADMINISTRATOR).orElse(null);
-        return userRequest.getRoles() != null && userRequest.getRoles().stream().anyMatch(it -> Objects.equals(it.getId(), adminRole.getId()));
+        return userRules.hasAdminRole(userRequest);
     }
 
     public boolean createUserRequestHasAdminRole(User user) {
-        Role adminRole = roleRepository.findByName(Role.ADMINISTRATOR).orElse(null);
-        return user.getRoles() != null && user.getRoles().stream().anyMatch(it -> Objects.equals(it.getId(), adminRole.getId()));
+        return userRules.hasAdminRole(user);
     }
 
-    public UserResponse getUserById(Long id) {
-        User user = userRepository.findById(id).orElse(null);
-        UserResponse response = null;
-        if(user != null) {
-            response = mapper.map(user, UserResponse.class);
+    // UserRules.userETag of the user's version, null when the user has no version yet
+    public String getUserETag(Long id) {
+        Long version = userRepository.findVersion(id);
+        return version != null ? userRules.userETag(version) : null;
+    }
+
+    // Serialized user for the tag given by getUserETag, from the local copy, the Redis copy or the stored user
+    public EncodedJson getUserJson(Long id, String etag) throws JsonProcessingException {
+        EncodedJson body = etag != null ? userJsonCache.get(id, etag) : null;
+        if(body == null && etag != null) {
+            body = userJsonCache.getStored(id, etag, userRepository.findJson(id));
         }
-        return response;
+        if(body == null) {
+            User user = userRepository.findById(id).orElse(null);
+            if(user != null) {
+                body = userJsonCache.encode(id, etag, mapper.toResponse(user));
+                if(etag != null) {
+                    userRepository.saveJson(id, userJsonCache.toStored(body), userJsonCache.getTtl());
+                }
+            }
+        }
+        return body;
     }
 
     public UserResponse editUser(Long id, UserRequest userRequest) {
         User user = userRepository.findById(id).orElse(null);
         UserResponse response = null;
         if(user != null) {
+            String previousEmail = user.getEmail();
+            Set<Long> previousRoles = userRules.roleIds(user);
             user.setFirstName(userRequest.getFirstName());
             user.setLastName(userRequest.getLastName());
             user.setEmail(userRequest.getEmail());
             user.setProtectedPassword(passwordEncoder.encode(userRequest.getPassword()));
-            Set<Role> roles = null;
-            if(userRequest.getRoles() != null && !userRequest.getRoles().isEmpty()) {
-                roles = userRequest.getRoles().stream().map(it -> roleRepository.findById(it.getId()).orElse(null)).filter(Objects::nonNull).collect(Collectors.toSet());
-            }
-            if(userRequest.getRoles() == null || (roles != null && roles.isEmpty())) {
-                Role guestRole = roleRepository.findByName(Role.GUEST).orElse(null);
-                roles = Set.of(guestRole);
-            }
-            user.setRoles(roles);
+            user.setRoles(userRules.rolesForEdit(userRequest));
             userRepository.save(user);
-            response = mapper.map(user, UserResponse.class);
+            if(!previousEmail.equals(user.getEmail()) || !previousRoles.equals(userRules.roleIds(user))) {
+                securityVersions.bump(id);
+            }
+            principalCache.invalidate(previousEmail);
+            userJsonCache.invalidate(id);
+            response = mapper.toResponse(user);
         }
         return response;
     }
@@ -178,6 +222,29 @@ public class UserService implements UserDetailsService {
         User user = userRepository.findById(id).orElse(null);
         if(user != null) {
             userRepository.delete(user);
+            // Tokens trusted from their claims would otherwise outlive the user
+            tokenRevocations.revokeAll(id);
+            // The bumped version stays behind as a tombstone, so no node keeps trusting the old one
+            securityVersions.bump(id);
+            principalCache.invalidate(user.getEmail());
+            userJsonCache.invalidate(id);
+            success = true;
+        }
+        return success;
+    }
+
+    public CurrentUserResponse getCurrentUser(User principal) {
+        return mapper.toCurrentUser(principal);
+    }
+
+    public void logout(VerifiedToken token) {
+        tokenRevocations.revoke(token);
+    }
+
+    public boolean revokeTokens(Long id) {
+        boolean success = false;
+        if(userRepository.existsById(id)) {
+            tokenRevocations.revokeAll(id);
             success = true;
         }
         return success;
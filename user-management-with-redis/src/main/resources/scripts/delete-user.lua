@@ -0,0 +1,25 @@
+-- KEYS[1] user hash, KEYS[2] keyspace set, KEYS[3] email index shard of the email read before the call, KEYS[4] user versions hash,
+-- KEYS[5] cached JSON body of the user, KEYS[6] search terms hash, KEYS[7..9] search sorted sets of the first name, last name and email
+-- ARGV[1] user id, ARGV[2] email read from the user hash before the call ('' for none)
+-- Returns 'changed' when the stored email is no longer the one read, so the caller reads it again and retries,
+-- otherwise '1' when the user was deleted and '0' when there was none
+local email = redis.call('HGET', KEYS[1], 'email') or ''
+if email ~= ARGV[2] then
+    return 'changed'
+end
+if email ~= '' and redis.call('HGET', KEYS[3], email) == ARGV[1] then
+    redis.call('HDEL', KEYS[3], email)
+end
+redis.call('SREM', KEYS[2], ARGV[1])
+redis.call('HDEL', KEYS[4], ARGV[1])
+redis.call('DEL', KEYS[5])
+local terms = redis.call('HGET', KEYS[6], ARGV[1])
+if terms then
+    for i, term in ipairs(cjson.decode(terms)) do
+        if term ~= '' then
+            redis.call('ZREM', KEYS[6 + i], term .. '\0' .. ARGV[1])
+        end
+    end
+    redis.call('HDEL', KEYS[6], ARGV[1])
+end
+return tostring(redis.call('DEL', KEYS[1]))
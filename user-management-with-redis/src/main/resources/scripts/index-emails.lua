@@ -0,0 +1,13 @@
+-- KEYS[1..n] user hashes, KEYS[n+1..2n] email index shard of each email read
+-- ARGV[1..n] user ids, ARGV[n+1..2n] email read from each user hash before the call
+-- Indexes each email the user still has, keeping any entry already there. A user whose email changed meanwhile
+-- was indexed by its save. Returns how many were added
+local n = #KEYS / 2
+local added = 0
+for i = 1, n do
+    local email = ARGV[n + i]
+    if redis.call('HGET', KEYS[i], 'email') == email then
+        added = added + redis.call('HSETNX', KEYS[n + i], email, ARGV[i])
+    end
+end
+return tostring(added)
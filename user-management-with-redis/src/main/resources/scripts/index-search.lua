@@ -0,0 +1,18 @@
+-- KEYS[1] search terms hash, KEYS[2..4] search sorted sets of the first name, last name and email,
+-- KEYS[5..] user hashes, one for each user in ARGV
+-- ARGV[1..] user id, lowercased first name, last name and email, four values per user
+-- Indexes each user still stored that has no search terms yet. Returns how many were added
+local added = 0
+for i = 1, #ARGV, 4 do
+    local id = ARGV[i]
+    if redis.call('EXISTS', KEYS[5 + (i - 1) / 4]) == 1 and redis.call('HEXISTS', KEYS[1], id) == 0 then
+        for j = 1, 3 do
+            if ARGV[i + j] ~= '' then
+                redis.call('ZADD', KEYS[1 + j], 0, ARGV[i + j] .. '\0' .. id)
+            end
+        end
+        redis.call('HSET', KEYS[1], id, cjson.encode({ ARGV[i + 1], ARGV[i + 2], ARGV[i + 3] }))
+        added = added + 1
+    end
+end
+return tostring(added)
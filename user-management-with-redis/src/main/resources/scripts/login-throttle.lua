@@ -0,0 +1,34 @@
+-- KEYS[1] token bucket of the email, KEYS[2] token bucket of the client address
+-- ARGV[1] email bucket capacity, ARGV[2] ms to refill one email token, ARGV[3] address bucket capacity, ARGV[4] ms to refill one address token
+-- An attempt takes a token from both buckets or from neither.
+-- Returns 'allowed', otherwise 'email:<ms>' or 'address:<ms>' with the wait until the limiting bucket has a token again
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local function level(key, capacity, interval)
+    local bucket = redis.call('HMGET', key, 'tokens', 'at')
+    if not bucket[1] then
+        return capacity
+    end
+    return math.min(capacity, tonumber(bucket[1]) + (now - tonumber(bucket[2])) / interval)
+end
+
+local function take(key, tokens, capacity, interval)
+    redis.call('HSET', key, 'tokens', tokens - 1, 'at', now)
+    -- A bucket that would be full again carries no state
+    redis.call('PEXPIRE', key, math.ceil((capacity - tokens + 1) * interval))
+end
+
+local emailCapacity, emailInterval = tonumber(ARGV[1]), tonumber(ARGV[2])
+local addressCapacity, addressInterval = tonumber(ARGV[3]), tonumber(ARGV[4])
+local emailTokens = level(KEYS[1], emailCapacity, emailInterval)
+if emailTokens < 1 then
+    return 'email:' .. math.ceil((1 - emailTokens) * emailInterval)
+end
+local addressTokens = level(KEYS[2], addressCapacity, addressInterval)
+if addressTokens < 1 then
+    return 'address:' .. math.ceil((1 - addressTokens) * addressInterval)
+end
+take(KEYS[1], emailTokens, emailCapacity, emailInterval)
+take(KEYS[2], addressTokens, addressCapacity, addressInterval)
+return 'allowed'
@@ -0,0 +1,15 @@
+-- KEYS[1] user hash
+-- ARGV[1] number of field/value pairs read, ARGV[2..] those pairs followed by the new field/value pairs
+-- Replaces the hash only if it still holds exactly the pairs read, returns '1' when replaced and '0' otherwise
+local count = tonumber(ARGV[1])
+if redis.call('HLEN', KEYS[1]) ~= count then
+    return '0'
+end
+for i = 2, count * 2, 2 do
+    if redis.call('HGET', KEYS[1], ARGV[i]) ~= ARGV[i + 1] then
+        return '0'
+    end
+end
+redis.call('DEL', KEYS[1])
+redis.call('HSET', KEYS[1], unpack(ARGV, count * 2 + 2))
+return '1'
@@ -0,0 +1,45 @@
+-- KEYS[1] user hash, KEYS[2] keyspace set, KEYS[3] email index shard of the email, KEYS[4] email index shard of the email read before the call,
+-- KEYS[5] user versions hash, KEYS[6] cached JSON body of the user, KEYS[7] search terms hash,
+-- KEYS[8..10] search sorted sets of the first name, last name and email
+-- ARGV[1] user id, ARGV[2] email, ARGV[3] email read from the user hash before the call ('' for none),
+-- ARGV[4..6] lowercased first name, last name and email, ARGV[7..] hash field/value pairs
+-- Returns 'changed' when the stored email is no longer the one read, so the caller reads it again and retries,
+-- 'conflict' when the email is claimed by another user, otherwise 'created' or 'updated'
+local previous = redis.call('HGET', KEYS[1], 'email') or ''
+if previous ~= ARGV[3] then
+    return 'changed'
+end
+local owner = redis.call('HGET', KEYS[3], ARGV[2])
+if owner and owner ~= ARGV[1] then
+    return 'conflict'
+end
+if previous ~= '' and previous ~= ARGV[2] and redis.call('HGET', KEYS[4], previous) == ARGV[1] then
+    redis.call('HDEL', KEYS[4], previous)
+end
+redis.call('HSET', KEYS[3], ARGV[2], ARGV[1])
+
+local existed = redis.call('DEL', KEYS[1])
+redis.call('HSET', KEYS[1], unpack(ARGV, 7))
+redis.call('SADD', KEYS[2], ARGV[1])
+redis.call('HINCRBY', KEYS[5], ARGV[1], 1)
+redis.call('DEL', KEYS[6])
+
+-- Search index members are <term>\0<id>, so equal terms sort by id and a prefix range stays contiguous
+local previousTerms = redis.call('HGET', KEYS[7], ARGV[1])
+if previousTerms then
+    for i, term in ipairs(cjson.decode(previousTerms)) do
+        if term ~= '' then
+            redis.call('ZREM', KEYS[7 + i], term .. '\0' .. ARGV[1])
+        end
+    end
+end
+for i = 1, 3 do
+    if ARGV[3 + i] ~= '' then
+        redis.call('ZADD', KEYS[7 + i], 0, ARGV[3 + i] .. '\0' .. ARGV[1])
+    end
+end
+redis.call('HSET', KEYS[7], ARGV[1], cjson.encode({ ARGV[4], ARGV[5], ARGV[6] }))
+if existed == 1 then
+    return 'updated'
+end
+return 'created'
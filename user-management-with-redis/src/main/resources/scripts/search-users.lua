@@ -0,0 +1,9 @@
+-- KEYS[1] search sorted set of one field, members <term>\0<id> all scored 0
+-- ARGV[1] lowercased prefix, ARGV[2] member to continue after ('' for the first page), ARGV[3] page size
+-- Returns up to one member more than the page size, in order, so the caller knows whether another page follows
+local min = '[' .. ARGV[1]
+if ARGV[2] ~= '' then
+    min = '(' .. ARGV[2]
+end
+-- No UTF-8 byte is 0xFF, so this bounds every term starting with the prefix
+return redis.call('ZRANGEBYLEX', KEYS[1], min, '[' .. ARGV[1] .. '\255', 'LIMIT', 0, tonumber(ARGV[3]) + 1)
@@ -0,0 +1,165 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Runs with users.storage.format=binary and users.storage.migrate=true, where users are stored as
+ * email, password hash and one blob, and users left in the field layout are rewritten.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerBinaryStorageTests extends AbstractTestNGSpringContextTests {
+
+    private static final Set<String> BINARY_FIELDS = Set.of("email", "_p", "_b");
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+        registry.add("users.storage.format", () -> "binary");
+        registry.add("users.storage.migrate", () -> "true");
+    }
+
+    @Test
+    public void createUser_storedAsBlob_readAndLoggedIn() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        String email = "binary." + UUID.randomUUID() + "@gmail.com";
+        Long id = createUser(new UserRequest("Bianca", "Doe", email, "qwerty", null));
+
+        assertEquals(BINARY_FIELDS, storedFields(id));
+
+        ResponseEntity<UserResponse> response = getUser(id, adminToken);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Bianca", response.getBody().getFirstName());
+        assertEquals("Doe", response.getBody().getLastName());
+        assertEquals(email, response.getBody().getEmail());
+        assertEquals(Set.of(Role.GUEST), roleNames(response.getBody()));
+        assertNotNull(login(email, "qwerty").getBody().getToken());
+    }
+
+    @Test
+    public void rewriteStorage_fieldLayoutUser_rewrittenAsBlob() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        RoleResponse guestRole = Arrays.stream(restTemplate.getForObject("/users/roles", RoleResponse[].class))
+                .filter(role -> role.getName().equals(Role.GUEST))
+                .findFirst()
+                .orElseThrow();
+        String email = "fields." + UUID.randomUUID() + "@gmail.com";
+        Long id = createUser(new UserRequest("Fiona", "Doe", email, "qwerty", null));
+
+        // Put the user back in the layout of the mapping converter, without names, as written before the binary format
+        String key = User.KEYSPACE + ":" + id;
+        String protectedPassword = (String) redisTemplate.opsForHash().get(key, "_p");
+        redisTemplate.delete(List.of(key, User.KEYSPACE + ":json:" + id));
+        redisTemplate.opsForHash().putAll(key, Map.of(
+                "_class", User.class.getName(),
+                "id", String.valueOf(id),
+                "email", email,
+                "protectedPassword", protectedPassword,
+                "roles.[0]", "roles:" + guestRole.getId()));
+
+        redisTemplate.delete("users:storage:layout");
+        assertTrue(userRepository.isStorageOutdated());
+
+        assertTrue(userRepository.rewriteStorage() >= 1);
+        assertFalse(userRepository.isStorageOutdated());
+        assertEquals(BINARY_FIELDS, storedFields(id));
+        // Already in the configured format, a second pass leaves it alone
+        userRepository.rewriteStorage();
+        assertEquals(BINARY_FIELDS, storedFields(id));
+
+        ResponseEntity<UserResponse> response = getUser(id, adminToken);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNull(response.getBody().getFirstName());
+        assertNull(response.getBody().getLastName());
+        assertEquals(email, response.getBody().getEmail());
+        assertEquals(Set.of(Role.GUEST), roleNames(response.getBody()));
+        assertNotNull(login(email, "qwerty").getBody().getToken());
+    }
+
+    private Long createUser(UserRequest userRequest) {
+        ResponseEntity<UserResponse> response = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody().getId();
+    }
+
+    private ResponseEntity<UserResponse> getUser(Long id, String token) {
+        return restTemplate.exchange(String.format("/users/%s", id), HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), token)), UserResponse.class);
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response;
+    }
+
+    private Set<String> storedFields(Long id) {
+        return redisTemplate.opsForHash().keys(User.KEYSPACE + ":" + id).stream().map(String::valueOf).collect(Collectors.toSet());
+    }
+
+    private static Set<String> roleNames(UserResponse user) {
+        return user.getRoles().stream().map(RoleResponse::getName).collect(Collectors.toSet());
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        headers.add(HttpHeaders.AUTHORIZATION, TOKEN_TYPE + " " + token);
+        return headers;
+    }
+
+}
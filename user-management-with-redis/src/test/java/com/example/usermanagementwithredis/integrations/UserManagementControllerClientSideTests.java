@@ -2,6 +2,7 @@ package com.example.usermanagementwithredis.integrations;
 
 import com.example.usermanagementwithredis.dtos.*;
 import com.example.usermanagementwithredis.entities.Role;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -17,6 +18,9 @@ import org.testcontainers.utility.DockerImageName;
 import org.testng.annotations.Test;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -104,6 +108,28 @@ public class UserManagementControllerClientSideTests extends AbstractTestNGSprin
         assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
     }
 
+    @Test
+    public void login_throttledByEmail() {
+        // The Redis container is reused across runs, so the email is new to the throttle every time
+        LoginRequest loginRequest = new LoginRequest("throttled." + UUID.randomUUID() + "@gmail.com", "12345");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        HttpEntity<LoginRequest> request = new HttpEntity<>(loginRequest, headers);
+
+        for(int i = 0; i < 10; i++) {
+            ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, request, LoginResponse.class);
+            assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        }
+
+        ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, request, LoginResponse.class);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertNotNull(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertTrue(Long.parseLong(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)) > 0);
+    }
+
     @Test
     public void createUserWithDefaultRole_success() {
         String testPassword = "qwerty";
@@ -204,6 +230,149 @@ public class UserManagementControllerClientSideTests extends AbstractTestNGSprin
         assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
     }
 
+    @Test
+    public void createUser_concurrentEmailDuplicity() throws Exception {
+        UserRequest userRequest = new UserRequest("Race", "Doe", "racedoe@gmail.com", "qwerty", null);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        HttpEntity<UserRequest> request = new HttpEntity<>(userRequest, headers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<HttpStatus>> statuses = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            statuses.add(executor.submit(() -> restTemplate.exchange("/users", HttpMethod.POST, request, UserResponse.class).getStatusCode()));
+        }
+        List<HttpStatus> results = new ArrayList<>();
+        for(Future<HttpStatus> status : statuses) {
+            results.add(status.get());
+        }
+        executor.shutdown();
+
+        assertEquals(1, results.stream().filter(HttpStatus.OK::equals).count());
+        assertEquals(7, results.stream().filter(HttpStatus.CONFLICT::equals).count());
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void getAllUsersByCursor_success() {
+        assertNotNull(this.adminToken);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, this.adminToken));
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+
+        Set<Long> ids = new HashSet<>();
+        String cursor = "0";
+        do {
+            ResponseEntity<UserResponse[]> response = restTemplate.exchange(String.format("/users?cursor=%s&size=1", cursor), HttpMethod.GET, request, UserResponse[].class);
+
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNotNull(response.getBody());
+            cursor = response.getHeaders().getFirst("X-Next-Cursor");
+            assertNotNull(cursor);
+            assertTrue(response.getBody().length <= 1);
+            Arrays.stream(response.getBody()).forEach(user -> ids.add(user.getId()));
+        } while(!cursor.equals("0"));
+
+        ResponseEntity<UserResponse[]> allResponse = restTemplate.exchange("/users?stream=true", HttpMethod.GET, request, UserResponse[].class);
+
+        assertEquals(HttpStatus.OK, allResponse.getStatusCode());
+        assertNotNull(allResponse.getBody());
+        assertEquals(allResponse.getBody().length, ids.size());
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void getAllUsersWithoutCursor_firstPage() {
+        assertNotNull(this.adminToken);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, this.adminToken));
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+
+        ResponseEntity<UserResponse[]> response = restTemplate.exchange("/users?size=2", HttpMethod.GET, request, UserResponse[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertTrue(response.getBody().length <= 2);
+        assertNotNull(response.getHeaders().getFirst("X-Next-Cursor"));
+        assertEquals(HttpStatus.BAD_REQUEST, restTemplate.exchange("/users?cursor=abc", HttpMethod.GET, request, String.class).getStatusCode());
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void streamAllUsers_success() {
+        assertNotNull(this.adminToken);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, this.adminToken));
+        HttpEntity<Void> request = new HttpEntity<>(headers);
+
+        ResponseEntity<UserResponse[]> response = restTemplate.exchange("/users?stream=true", HttpMethod.GET, request, UserResponse[].class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        assertTrue(Arrays.stream(response.getBody()).anyMatch(user -> user.getEmail().equals("root@gmail.com")));
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void importUsers_success() throws Exception {
+        assertNotNull(this.adminToken);
+        ObjectMapper mapper = new ObjectMapper();
+        String body = String.join("\n",
+                mapper.writeValueAsString(new UserRequest("Ada", "Doe", "adadoe@gmail.com", "qwerty", null)),
+                "{not json",
+                mapper.writeValueAsString(new UserRequest("Bob", "Doe", "bobdoe@gmail.com", "qwerty", null)),
+                mapper.writeValueAsString(new UserRequest("Ada", "Doe", "adadoe@gmail.com", "qwerty", null)),
+                mapper.writeValueAsString(new UserRequest("Root", "Admin", "root@gmail.com", "qwerty", null)));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE);
+        headers.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, this.adminToken));
+        HttpEntity<String> request = new HttpEntity<>(body, headers);
+
+        ResponseEntity<String> response = restTemplate.exchange("/users/batch", HttpMethod.POST, request, String.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+        List<UserImportResult> results = new ArrayList<>();
+        for(String line : response.getBody().split("\n")) {
+            if(!line.isBlank()) {
+                results.add(mapper.readValue(line, UserImportResult.class));
+            }
+        }
+        assertEquals(5, results.size());
+        assertEquals(UserImportResult.CREATED, results.get(0).getStatus());
+        assertNotNull(results.get(0).getId());
+        assertEquals(UserImportResult.INVALID, results.get(1).getStatus());
+        assertEquals(UserImportResult.CREATED, results.get(2).getStatus());
+        assertEquals(UserImportResult.DUPLICATED, results.get(3).getStatus());
+        assertEquals(UserImportResult.DUPLICATED, results.get(4).getStatus());
+
+        HttpHeaders loginHeaders = new HttpHeaders();
+        loginHeaders.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        loginHeaders.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        HttpEntity<LoginRequest> loginRequest = new HttpEntity<>(new LoginRequest("bobdoe@gmail.com", "qwerty"), loginHeaders);
+
+        ResponseEntity<LoginResponse> loginResponse = restTemplate.exchange("/users/login", HttpMethod.POST, loginRequest, LoginResponse.class);
+
+        assertEquals(HttpStatus.OK, loginResponse.getStatusCode());
+    }
+
+    @Test
+    public void importUsers_failByNoCredentials() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE);
+        HttpEntity<String> request = new HttpEntity<>("{}", headers);
+
+        ResponseEntity<String> response = restTemplate.exchange("/users/batch", HttpMethod.POST, request, String.class);
+
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+    }
+
     @Test(dependsOnMethods = "createUserWithDefaultRole_success")
     public void editUserWithUserCredentials_success() {
         String testPassword = "12345";
@@ -431,5 +600,146 @@ public class UserManagementControllerClientSideTests extends AbstractTestNGSprin
         this.userCreatedWithDefaultRolePassword = null;
     }
 
-}
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void logoutAndRevokeTokens_success() {
+        UserRequest userRequest = new UserRequest("Jane", "Roe", "janeroe.revoke@gmail.com", "qwerty", null);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+
+        ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, headers), UserResponse.class);
+        assertEquals(HttpStatus.OK, createResponse.getStatusCode());
+        Long id = createResponse.getBody().getId();
+
+        LoginRequest loginRequest = new LoginRequest(userRequest.getEmail(), userRequest.getPassword());
+        String firstToken = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(loginRequest, headers), LoginResponse.class).getBody().getToken();
+        String secondToken = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(loginRequest, headers), LoginResponse.class).getBody().getToken();
+
+        ResponseEntity<Void> logoutResponse = restTemplate.exchange("/users/logout", HttpMethod.POST, new HttpEntity<>(withToken(headers, firstToken)), Void.class);
+        assertEquals(HttpStatus.OK, logoutResponse.getStatusCode());
+
+        String userPath = String.format("/users/%s", id);
+        assertEquals(HttpStatus.UNAUTHORIZED, restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(withToken(headers, firstToken)), UserResponse.class).getStatusCode());
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(withToken(headers, secondToken)), UserResponse.class).getStatusCode());
+
+        ResponseEntity<Void> revokeResponse = restTemplate.exchange(userPath + "/tokens", HttpMethod.DELETE, new HttpEntity<>(withToken(headers, secondToken)), Void.class);
+        assertEquals(HttpStatus.OK, revokeResponse.getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(withToken(headers, secondToken)), UserResponse.class).getStatusCode());
+
+        // Most likely within the second of the revocation, which must not revoke it
+        String thirdToken = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(loginRequest, headers), LoginResponse.class).getBody().getToken();
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(withToken(headers, thirdToken)), UserResponse.class).getStatusCode());
+
+        ResponseEntity<Void> deleteResponse = restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(withToken(headers, this.adminToken)), Void.class);
+        assertEquals(HttpStatus.OK, deleteResponse.getStatusCode());
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void getCurrentUser_success() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+
+        ResponseEntity<CurrentUserResponse> response = restTemplate.exchange("/users/me", HttpMethod.GET, new HttpEntity<>(withToken(headers, this.adminToken)), CurrentUserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("root@gmail.com", response.getBody().getEmail());
+        assertTrue(response.getBody().getRoles().stream().anyMatch(role -> role.getName().equals("Administrator")));
+
+        ResponseEntity<CurrentUserResponse> anonymousResponse = restTemplate.exchange("/users/me", HttpMethod.GET, new HttpEntity<>(headers), CurrentUserResponse.class);
+        assertEquals(HttpStatus.FORBIDDEN, anonymousResponse.getStatusCode());
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void getUserById_notModified() {
+        UserRequest userRequest = new UserRequest("Jane", "Roe", "janeroe.etag@gmail.com", "qwerty", null);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+
+        ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, headers), UserResponse.class);
+        assertEquals(HttpStatus.OK, createResponse.getStatusCode());
+        String userPath = String.format("/users/%s", createResponse.getBody().getId());
+
+        HttpHeaders adminHeaders = withToken(headers, this.adminToken);
+        ResponseEntity<UserResponse> response = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String etag = response.getHeaders().getETag();
+        assertNotNull(etag);
 
+        HttpHeaders conditionalHeaders = withToken(headers, this.adminToken);
+        conditionalHeaders.setIfNoneMatch(etag);
+        ResponseEntity<UserResponse> notModifiedResponse = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(conditionalHeaders), UserResponse.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModifiedResponse.getStatusCode());
+        assertNull(notModifiedResponse.getBody());
+
+        userRequest.setFirstName("Janet");
+        ResponseEntity<UserResponse> editResponse = restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, adminHeaders), UserResponse.class);
+        assertEquals(HttpStatus.OK, editResponse.getStatusCode());
+        ResponseEntity<UserResponse> modifiedResponse = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(conditionalHeaders), UserResponse.class);
+        assertEquals(HttpStatus.OK, modifiedResponse.getStatusCode());
+        assertNotEquals(etag, modifiedResponse.getHeaders().getETag());
+        assertEquals("Janet", modifiedResponse.getBody().getFirstName());
+
+        ResponseEntity<RoleResponse[]> rolesResponse = restTemplate.exchange("/users/roles", HttpMethod.GET, new HttpEntity<>(headers), RoleResponse[].class);
+        assertNotNull(rolesResponse.getHeaders().getETag());
+        HttpHeaders rolesHeaders = new HttpHeaders();
+        rolesHeaders.setIfNoneMatch(rolesResponse.getHeaders().getETag());
+        assertEquals(HttpStatus.NOT_MODIFIED, restTemplate.exchange("/users/roles", HttpMethod.GET, new HttpEntity<>(rolesHeaders), RoleResponse[].class).getStatusCode());
+
+        ResponseEntity<Void> deleteResponse = restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(adminHeaders), Void.class);
+        assertEquals(HttpStatus.OK, deleteResponse.getStatusCode());
+    }
+
+    @Test(dependsOnMethods = "loginRoot_success")
+    public void searchUsers_byPrefix() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        HttpHeaders adminHeaders = withToken(headers, this.adminToken);
+
+        // The Redis container is reused across runs, so every term carries this run's suffix
+        String run = UUID.randomUUID().toString().replace("-", "");
+        String prefix = "q" + run;
+        List<String> paths = new ArrayList<>();
+        for(String firstName : List.of("Q" + run + "inta", "q" + run + "ill", "Q" + run + "incy", "Tom")) {
+            UserRequest userRequest = new UserRequest(firstName, "Searched" + run, firstName.toLowerCase() + ".search." + run + "@gmail.com", "qwerty", null);
+            ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, headers), UserResponse.class);
+            assertEquals(HttpStatus.OK, createResponse.getStatusCode());
+            paths.add(String.format("/users/%s", createResponse.getBody().getId()));
+        }
+
+        ResponseEntity<UserResponse[]> firstPage = restTemplate.exchange("/users/search?field=firstName&prefix={prefix}&size=2", HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse[].class, prefix.toUpperCase());
+        assertEquals(HttpStatus.OK, firstPage.getStatusCode());
+        String cursor = firstPage.getHeaders().getFirst("X-Next-Cursor");
+        assertNotNull(cursor);
+        ResponseEntity<UserResponse[]> lastPage = restTemplate.exchange("/users/search?field=firstName&prefix={prefix}&size=2&cursor={cursor}", HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse[].class, prefix, cursor);
+        assertEquals(HttpStatus.OK, lastPage.getStatusCode());
+        assertNull(lastPage.getHeaders().getFirst("X-Next-Cursor"));
+
+        List<String> found = new ArrayList<>();
+        for(UserResponse[] page : List.of(firstPage.getBody(), lastPage.getBody())) {
+            Arrays.stream(page).map(UserResponse::getFirstName).forEach(found::add);
+        }
+        assertEquals(List.of("q" + run + "ill", "Q" + run + "incy", "Q" + run + "inta"), found);
+
+        ResponseEntity<UserResponse[]> byEmail = restTemplate.exchange("/users/search?field=email&prefix=tom.search.{run}", HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse[].class, run);
+        assertEquals(1, byEmail.getBody().length);
+        assertEquals("Tom", byEmail.getBody()[0].getFirstName());
+        assertEquals(HttpStatus.BAD_REQUEST, restTemplate.exchange("/users/search?field=password&prefix=a", HttpMethod.GET, new HttpEntity<>(adminHeaders), String.class).getStatusCode());
+
+        for(String path : paths) {
+            assertEquals(HttpStatus.OK, restTemplate.exchange(path, HttpMethod.DELETE, new HttpEntity<>(adminHeaders), Void.class).getStatusCode());
+        }
+        ResponseEntity<UserResponse[]> afterDelete = restTemplate.exchange("/users/search?field=lastName&prefix=searched{run}", HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse[].class, run);
+        assertEquals(0, afterDelete.getBody().length);
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        HttpHeaders authorized = new HttpHeaders();
+        authorized.addAll(headers);
+        authorized.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, token));
+        return authorized;
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.LoginRequest;
+import com.example.usermanagementwithredis.dtos.LoginResponse;
+import com.example.usermanagementwithredis.dtos.UserRequest;
+import com.example.usermanagementwithredis.dtos.UserResponse;
+import com.example.usermanagementwithredis.seeders.EmailIndexMigration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Runs with the email index spread over four hashes: every email sits in the shard given by its SHA-1,
+ * and a layout recorded for another shard count is rebuilt by EmailIndexMigration.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerEmailIndexTests extends AbstractTestNGSpringContextTests {
+
+    private static final String INDEX_KEY = "users:emails";
+    private static final String LAYOUT_KEY = "users:emails:layout";
+    private static final int SHARDS = 4;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private EmailIndexMigration emailIndexMigration;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+        registry.add("users.email-index.shards", () -> String.valueOf(SHARDS));
+    }
+
+    @Test
+    public void createUser_emailIndexedInItsShard() throws Exception {
+        assertEquals(String.valueOf(SHARDS), redisTemplate.opsForValue().get(LAYOUT_KEY));
+        assertFalse(redisTemplate.hasKey(INDEX_KEY));
+
+        String email = "shard." + UUID.randomUUID() + "@gmail.com";
+        UserResponse user = createUser(new UserRequest("Sasha", "Doe", email, "qwerty", null));
+
+        assertEquals(String.valueOf(user.getId()), redisTemplate.opsForHash().get(shardKey(email), email));
+        assertEquals(HttpStatus.OK, login(email, "qwerty").getStatusCode());
+        // The same email is found in its shard and rejected
+        ResponseEntity<UserResponse> duplicate = restTemplate.exchange("/users", HttpMethod.POST,
+                new HttpEntity<>(new UserRequest("Sasha", "Roe", email, "qwerty", null), jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.CONFLICT, duplicate.getStatusCode());
+    }
+
+    @Test
+    public void otherLayout_rebuiltByMigration() throws Exception {
+        String email = "shard.migrated." + UUID.randomUUID() + "@gmail.com";
+        UserResponse user = createUser(new UserRequest("Mika", "Doe", email, "qwerty", null));
+        // As left by nodes running with two shards: the entry is only in the old layout
+        redisTemplate.opsForHash().delete(shardKey(email), email);
+        redisTemplate.opsForHash().put(INDEX_KEY + ":2:0", email, String.valueOf(user.getId()));
+        redisTemplate.opsForValue().set(LAYOUT_KEY, "2");
+
+        emailIndexMigration.afterSingletonsInstantiated();
+
+        assertEquals(String.valueOf(SHARDS), redisTemplate.opsForValue().get(LAYOUT_KEY));
+        assertEquals(String.valueOf(user.getId()), redisTemplate.opsForHash().get(shardKey(email), email));
+        assertFalse(redisTemplate.hasKey(INDEX_KEY + ":2:0"));
+        assertEquals(HttpStatus.OK, login(email, "qwerty").getStatusCode());
+    }
+
+    // The shard the scripts pick: first four bytes of the SHA-1 as an unsigned int, modulo the shard count
+    private static String shardKey(String email) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(email.getBytes(StandardCharsets.UTF_8));
+        long prefix = ((digest[0] & 0xFFL) << 24) | ((digest[1] & 0xFFL) << 16) | ((digest[2] & 0xFFL) << 8) | (digest[3] & 0xFFL);
+        return INDEX_KEY + ":" + SHARDS + ":" + prefix % SHARDS;
+    }
+
+    private UserResponse createUser(UserRequest userRequest) {
+        ResponseEntity<UserResponse> response = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody();
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        return restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Runs with the default users.storage.format=fields, where every property has its own hash field and
+ * the roles are one role mask. Users still holding role references are rewritten when the layout changes.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerFieldStorageTests extends AbstractTestNGSpringContextTests {
+
+    private static final Set<String> FIELDS = Set.of("id", "firstName", "lastName", "email", "protectedPassword", "roleMask");
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void createUser_storedWithRoleMask_readAndLoggedIn() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        String email = "mask." + UUID.randomUUID() + "@gmail.com";
+        Long id = createUser(new UserRequest("Mary", "Doe", email, "qwerty", null));
+
+        assertEquals(FIELDS, storedFields(id));
+        assertFalse(userRepository.isStorageOutdated());
+
+        ResponseEntity<UserResponse> response = getUser(id, adminToken);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(Set.of(Role.GUEST), roleNames(response.getBody()));
+        assertNotNull(login(email, "qwerty").getBody().getToken());
+    }
+
+    @Test
+    public void rewriteStorage_roleReferences_rewrittenAsRoleMask() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        RoleResponse guestRole = Arrays.stream(restTemplate.getForObject("/users/roles", RoleResponse[].class))
+                .filter(role -> role.getName().equals(Role.GUEST))
+                .findFirst()
+                .orElseThrow();
+        String email = "references." + UUID.randomUUID() + "@gmail.com";
+        Long id = createUser(new UserRequest("Rita", "Doe", email, "qwerty", null));
+
+        // Put the user back in the layout of the mapping converter, as written before role masks
+        String key = User.KEYSPACE + ":" + id;
+        String protectedPassword = (String) redisTemplate.opsForHash().get(key, "protectedPassword");
+        redisTemplate.delete(List.of(key, User.KEYSPACE + ":json:" + id, "users:storage:layout"));
+        redisTemplate.opsForHash().putAll(key, Map.of(
+                "_class", User.class.getName(),
+                "id", String.valueOf(id),
+                "firstName", "Rita",
+                "lastName", "Doe",
+                "email", email,
+                "protectedPassword", protectedPassword,
+                "roles.[0]", "roles:" + guestRole.getId()));
+
+        // Still readable before the migration
+        assertEquals(Set.of(Role.GUEST), roleNames(getUser(id, adminToken).getBody()));
+        assertTrue(userRepository.isStorageOutdated());
+
+        assertTrue(userRepository.rewriteStorage() >= 1);
+        assertFalse(userRepository.isStorageOutdated());
+        assertEquals(FIELDS, storedFields(id));
+
+        ResponseEntity<UserResponse> response = getUser(id, adminToken);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Rita", response.getBody().getFirstName());
+        assertEquals(email, response.getBody().getEmail());
+        assertEquals(Set.of(Role.GUEST), roleNames(response.getBody()));
+        assertNotNull(login(email, "qwerty").getBody().getToken());
+    }
+
+    private Long createUser(UserRequest userRequest) {
+        ResponseEntity<UserResponse> response = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody().getId();
+    }
+
+    private ResponseEntity<UserResponse> getUser(Long id, String token) {
+        return restTemplate.exchange(String.format("/users/%s", id), HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), token)), UserResponse.class);
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response;
+    }
+
+    private Set<String> storedFields(Long id) {
+        return redisTemplate.opsForHash().keys(User.KEYSPACE + ":" + id).stream().map(String::valueOf).collect(Collectors.toSet());
+    }
+
+    private static Set<String> roleNames(UserResponse user) {
+        return user.getRoles().stream().map(RoleResponse::getName).collect(Collectors.toSet());
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        headers.add(HttpHeaders.AUTHORIZATION, TOKEN_TYPE + " " + token);
+        return headers;
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.security.PasswordHashingExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Runs with one hashing thread and one queue slot, so two pending hashes fill the executor and the
+ * next login or user creation is turned away with 503 and Retry-After instead of waiting. Bulk imports
+ * hash on their own pool and go through meanwhile.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerHashingAdmissionTests extends AbstractTestNGSpringContextTests {
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+        registry.add("security.password-hashing.threads", () -> "1");
+        registry.add("security.password-hashing.queue-capacity", () -> "1");
+        registry.add("security.password-hashing.retry-after", () -> "3");
+    }
+
+    @Test
+    public void hashingQueueFull_serviceUnavailableWithRetryAfter() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // One hash holds the only thread, the next one takes the only queue slot
+        CompletableFuture<Boolean> running = passwordHashingExecutor.verifyAsync(() -> {
+            started.countDown();
+            try {
+                return release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = passwordHashingExecutor.verifyAsync(() -> true);
+        double rejected = meterRegistry.get("password.hashing.rejected").counter().count();
+
+        try {
+            ResponseEntity<LoginResponse> loginResponse = login("root@gmail.com", "root");
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, loginResponse.getStatusCode());
+            assertEquals("3", loginResponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+            UserRequest userRequest = new UserRequest("Quinn", "Doe", "admission." + UUID.randomUUID() + "@gmail.com", "qwerty", null);
+            ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, createResponse.getStatusCode());
+            assertEquals("3", createResponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+            assertEquals(rejected + 2, meterRegistry.get("password.hashing.rejected").counter().count());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+
+        // Once the queue drains the same login goes through
+        assertEquals(HttpStatus.OK, login("root@gmail.com", "root").getStatusCode());
+    }
+
+    @Test
+    public void hashingQueueFull_importStillHashed() throws Exception {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = passwordHashingExecutor.verifyAsync(() -> {
+            started.countDown();
+            try {
+                return release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = passwordHashingExecutor.verifyAsync(() -> true);
+
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            String body = String.join("\n",
+                    mapper.writeValueAsString(new UserRequest("Ivy", "Doe", "import." + UUID.randomUUID() + "@gmail.com", "qwerty", null)),
+                    mapper.writeValueAsString(new UserRequest("Ike", "Doe", "import." + UUID.randomUUID() + "@gmail.com", "qwerty", null)));
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE);
+            headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_NDJSON_VALUE);
+            headers.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, adminToken));
+            ResponseEntity<String> response = restTemplate.exchange("/users/batch", HttpMethod.POST, new HttpEntity<>(body, headers), String.class);
+
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            List<UserImportResult> results = new ArrayList<>();
+            for(String line : response.getBody().split("\n")) {
+                if(!line.isBlank()) {
+                    results.add(mapper.readValue(line, UserImportResult.class));
+                }
+            }
+            assertEquals(2, results.size());
+            results.forEach(result -> assertEquals(UserImportResult.CREATED, result.getStatus()));
+            // The login pool was still full the whole time
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, login("root@gmail.com", "root").getStatusCode());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(running.get(10, TimeUnit.SECONDS));
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        return restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+}
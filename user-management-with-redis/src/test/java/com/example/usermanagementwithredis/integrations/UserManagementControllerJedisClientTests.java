@@ -0,0 +1,81 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.LoginRequest;
+import com.example.usermanagementwithredis.dtos.LoginResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * With the default spring.redis.client-type the application runs on pooled Jedis connections,
+ * measured by the usage of their pool.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerJedisClientTests extends AbstractTestNGSpringContextTests {
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void jedisClient_poolUsagePublished() {
+        assertEquals(JedisConnectionFactory.class, connectionFactory.getClass());
+        assertEquals(HttpStatus.OK, login("root@gmail.com", "root").getStatusCode());
+
+        // Read from the JMX bean of the pool, named after the configured prefix
+        Gauge idle = meterRegistry.find("commons.pool2.num.idle").gauges().stream()
+                .filter(gauge -> gauge.getId().getTag("name").startsWith("jedis"))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(idle.value() >= 1);
+        double active = meterRegistry.get("commons.pool2.num.active").tag("name", "jedis").gauge().value();
+        assertFalse(Double.isNaN(active));
+        assertTrue(meterRegistry.find("lettuce.command.completion").timers().isEmpty());
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), headers), LoginResponse.class);
+    }
+
+}
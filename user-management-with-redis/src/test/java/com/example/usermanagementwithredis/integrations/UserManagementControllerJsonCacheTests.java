@@ -0,0 +1,140 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.services.UserJsonCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * GET /users/{id} answers with the body serialized for the user's current ETag, from this node or from
+ * users:json:<id>. An edit makes both copies stale and a delete removes them.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerJsonCacheTests extends AbstractTestNGSpringContextTests {
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private UserJsonCache userJsonCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void editAndDelete_invalidateCachedJson() {
+        HttpHeaders adminHeaders = withToken(jsonHeaders(), login("root@gmail.com", "root"));
+        UserRequest userRequest = new UserRequest("Jason", "Doe", "json." + UUID.randomUUID() + "@gmail.com", "qwerty", null);
+        ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, createResponse.getStatusCode());
+        Long id = createResponse.getBody().getId();
+        String userPath = String.format("/users/%s", id);
+        String jsonKey = String.format("users:json:%s", id);
+
+        ResponseEntity<UserResponse> first = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse.class);
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        String etag = first.getHeaders().getETag();
+        assertNotNull(etag);
+        assertNotNull(userJsonCache.get(id, etag));
+        assertTrue(redisTemplate.opsForValue().get(jsonKey).startsWith(etag + "\n"));
+
+        // Without the local copy the body comes from Redis
+        userJsonCache.invalidate(id);
+        double redisHits = meterRegistry.get("users.json-cache.redis").tag("result", "hit").counter().count();
+        ResponseEntity<UserResponse> fromRedis = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse.class);
+        assertEquals(HttpStatus.OK, fromRedis.getStatusCode());
+        assertEquals(first.getBody().toString(), fromRedis.getBody().toString());
+        assertEquals(redisHits + 1, meterRegistry.get("users.json-cache.redis").tag("result", "hit").counter().count());
+
+        userRequest.setFirstName("Jayson");
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, adminHeaders), UserResponse.class).getStatusCode());
+        assertNull(userJsonCache.get(id, etag));
+        assertFalse(redisTemplate.hasKey(jsonKey));
+
+        // The old tag no longer matches, so the new body is sent
+        HttpHeaders conditional = withIfNoneMatch(adminHeaders, etag);
+        ResponseEntity<UserResponse> edited = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(conditional), UserResponse.class);
+        assertEquals(HttpStatus.OK, edited.getStatusCode());
+        assertEquals("Jayson", edited.getBody().getFirstName());
+        assertNotEquals(etag, edited.getHeaders().getETag());
+        ResponseEntity<UserResponse> notModified = restTemplate.exchange(userPath, HttpMethod.GET,
+                new HttpEntity<>(withIfNoneMatch(adminHeaders, edited.getHeaders().getETag())), UserResponse.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertEquals(List.of(edited.getHeaders().getETag()), notModified.getHeaders().get(HttpHeaders.ETAG));
+
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(adminHeaders), Void.class).getStatusCode());
+        assertNull(userJsonCache.get(id, edited.getHeaders().getETag()));
+        assertFalse(redisTemplate.hasKey(jsonKey));
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(adminHeaders), UserResponse.class).getStatusCode());
+    }
+
+    private String login(String email, String password) {
+        ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody().getToken();
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        HttpHeaders authorized = new HttpHeaders();
+        authorized.addAll(headers);
+        authorized.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, token));
+        return authorized;
+    }
+
+    private static HttpHeaders withIfNoneMatch(HttpHeaders headers, String etag) {
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.addAll(headers);
+        conditional.setIfNoneMatch(etag);
+        return conditional;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.LoginRequest;
+import com.example.usermanagementwithredis.dtos.LoginResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * With spring.redis.client-type=lettuce the application shares one multiplexed Lettuce connection,
+ * whose command latencies the driver records itself.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.redis.client-type=lettuce")
+@Testcontainers
+public class UserManagementControllerLettuceClientTests extends AbstractTestNGSpringContextTests {
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void lettuceClient_commandLatenciesPublished() {
+        assertEquals(LettuceConnectionFactory.class, connectionFactory.getClass());
+        assertEquals(HttpStatus.OK, login("root@gmail.com", "root").getStatusCode());
+
+        assertTrue(meterRegistry.find("lettuce.command.completion").timers().stream().mapToLong(Timer::count).sum() > 0);
+        assertTrue(meterRegistry.find("lettuce.command.firstresponse").timers().stream().mapToLong(Timer::count).sum() > 0);
+        // The login looks the email up in the index hash
+        assertTrue(meterRegistry.get("lettuce.command.completion").tag("command", "HGET").timer().count() > 0);
+        assertTrue(meterRegistry.find("commons.pool2.num.active").gauges().isEmpty());
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), headers), LoginResponse.class);
+    }
+
+}
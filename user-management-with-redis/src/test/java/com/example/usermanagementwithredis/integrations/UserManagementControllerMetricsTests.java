@@ -0,0 +1,106 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.LoginRequest;
+import com.example.usermanagementwithredis.dtos.LoginResponse;
+import com.example.usermanagementwithredis.dtos.UserRequest;
+import com.example.usermanagementwithredis.dtos.UserResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Every stage a request goes through is published as a bucketed histogram on /actuator/prometheus,
+ * so p99 can be aggregated across instances. Test contexts only export metrics with @AutoConfigureMetrics.
+ */
+@AutoConfigureMetrics
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerMetricsTests extends AbstractTestNGSpringContextTests {
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void requestStages_publishedAsHistograms() {
+        UserRequest userRequest = new UserRequest("Mia", "Doe", "metrics." + UUID.randomUUID() + "@gmail.com", "qwerty", null);
+        ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, createResponse.getStatusCode());
+        ResponseEntity<LoginResponse> loginResponse = restTemplate.exchange("/users/login", HttpMethod.POST,
+                new HttpEntity<>(new LoginRequest(userRequest.getEmail(), "qwerty"), jsonHeaders()), LoginResponse.class);
+        assertEquals(HttpStatus.OK, loginResponse.getStatusCode());
+        HttpHeaders headers = jsonHeaders();
+        headers.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, loginResponse.getBody().getToken()));
+        String userPath = String.format("/users/%s", createResponse.getBody().getId());
+        // The second request finds the token already verified
+        for(int i = 0; i < 2; i++) {
+            assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(headers), UserResponse.class).getStatusCode());
+        }
+
+        ResponseEntity<String> metrics = restTemplate.getForEntity("/actuator/prometheus", String.class);
+        assertEquals(HttpStatus.OK, metrics.getStatusCode());
+        String body = metrics.getBody();
+
+        assertHistogram(body, "http_server_requests_seconds", "method=\"POST\"", "uri=\"/users/login\"");
+        assertHistogram(body, "http_server_requests_seconds", "method=\"GET\"", "uri=\"/users/{id}\"");
+        assertHistogram(body, "token_verification_seconds", "result=\"signature\"");
+        assertHistogram(body, "token_verification_seconds", "result=\"cached\"");
+        assertHistogram(body, "password_hashing_time_seconds", "operation=\"encode\"");
+        assertHistogram(body, "password_hashing_time_seconds", "operation=\"verify\"");
+        assertHistogram(body, "user_mapping_seconds", "target=\"entity\"");
+        assertHistogram(body, "user_mapping_seconds", "target=\"response\"");
+        assertHistogram(body, "spring_data_repository_invocations_seconds", "repository=\"UserRepository\"", "method=\"findByEmail\"");
+        assertHistogram(body, "spring_data_repository_invocations_seconds", "repository=\"RoleRepository\"", "method=\"findAll\"");
+    }
+
+    // A bucket line of the metric with all the given labels
+    private static void assertHistogram(String metrics, String name, String... labels) {
+        assertTrue(Arrays.stream(metrics.split("\n"))
+                        .filter(line -> line.startsWith(name + "_bucket{"))
+                        .anyMatch(line -> Arrays.stream(labels).allMatch(line::contains)),
+                name + " has no buckets with " + String.join(", ", labels));
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+}
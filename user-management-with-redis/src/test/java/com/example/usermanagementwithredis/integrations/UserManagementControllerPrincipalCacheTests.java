@@ -0,0 +1,170 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.security.PrincipalCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * The principals near-cache of the authorization filter: entries are dropped by the edits and deletes of
+ * this node, and by the messages other nodes publish on security.principal-cache.channel.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerPrincipalCacheTests extends AbstractTestNGSpringContextTests {
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Value("${security.principal-cache.channel}")
+    private String CHANNEL;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void channelMessage_dropsCachedPrincipal() throws Exception {
+        String email = "principal.remote." + UUID.randomUUID() + "@gmail.com";
+        createUser(new UserRequest("Remy", "Doe", email, "qwerty", null));
+        String token = login(email, "qwerty");
+        assertEquals(HttpStatus.OK, getCurrentUser(token).getStatusCode());
+        assertNotNull(principalCache.getIfPresent(email));
+
+        // What another node publishes after editing the user
+        double received = invalidationsReceived();
+        redisTemplate.convertAndSend(CHANNEL, email);
+
+        awaitTrue(() -> principalCache.getIfPresent(email) == null);
+        awaitTrue(() -> invalidationsReceived() > received);
+        assertEquals(HttpStatus.OK, getCurrentUser(token).getStatusCode());
+        assertNotNull(principalCache.getIfPresent(email));
+    }
+
+    @Test
+    public void editAndDelete_dropCachedPrincipal() throws Exception {
+        String adminToken = login("root@gmail.com", "root");
+        RoleResponse adminRole = Arrays.stream(restTemplate.getForObject("/users/roles", RoleResponse[].class))
+                .filter(role -> role.getName().equals(Role.ADMINISTRATOR))
+                .findFirst()
+                .orElseThrow();
+        String email = "principal.edit." + UUID.randomUUID() + "@gmail.com";
+        UserRequest userRequest = new UserRequest("Edith", "Doe", email, "qwerty", null);
+        String userPath = String.format("/users/%s", createUser(userRequest).getId());
+        String token = login(email, "qwerty");
+        ResponseEntity<CurrentUserResponse> current = getCurrentUser(token);
+        assertEquals(HttpStatus.OK, current.getStatusCode());
+        assertEquals(Set.of(Role.GUEST), roleNames(current.getBody()));
+
+        // The edit drops the entry here before answering, and this node also receives its own message
+        double received = invalidationsReceived();
+        userRequest.setRoles(Set.of(new RoleRequest(Long.parseLong(adminRole.getId()))));
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, withToken(jsonHeaders(), adminToken)), UserResponse.class).getStatusCode());
+        assertNull(principalCache.getIfPresent(email));
+        ResponseEntity<CurrentUserResponse> afterEdit = getCurrentUser(token);
+        assertEquals(HttpStatus.OK, afterEdit.getStatusCode());
+        assertEquals(Set.of(Role.ADMINISTRATOR), roleNames(afterEdit.getBody()));
+        awaitTrue(() -> invalidationsReceived() > received);
+
+        // A cached principal would keep the deleted user's token working until the entry expired
+        assertNotNull(principalCache.getIfPresent(email));
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(withToken(jsonHeaders(), adminToken)), Void.class).getStatusCode());
+        assertNull(principalCache.getIfPresent(email));
+        assertEquals(HttpStatus.UNAUTHORIZED, getCurrentUser(token).getStatusCode());
+    }
+
+    private double invalidationsReceived() {
+        return meterRegistry.get("principals.cache.invalidations.received").counter().count();
+    }
+
+    // Channel messages are delivered on the listener container's thread
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private UserResponse createUser(UserRequest userRequest) {
+        ResponseEntity<UserResponse> response = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody();
+    }
+
+    private String login(String email, String password) {
+        ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody().getToken();
+    }
+
+    private ResponseEntity<CurrentUserResponse> getCurrentUser(String token) {
+        return restTemplate.exchange("/users/me", HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), token)), CurrentUserResponse.class);
+    }
+
+    private static Set<String> roleNames(CurrentUserResponse user) {
+        return user.getRoles().stream().map(RoleResponse::getName).collect(Collectors.toSet());
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        HttpHeaders authorized = new HttpHeaders();
+        authorized.addAll(headers);
+        authorized.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, token));
+        return authorized;
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.Role;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Runs the reactive web stack (spring.main.web-application-type=reactive on Lettuce) through the
+ * login, the conditional GET of a user and the Administrator-only role change of an edit.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.main.web-application-type=reactive", "spring.redis.client-type=lettuce"})
+@Testcontainers
+public class UserManagementControllerReactiveTests extends AbstractTestNGSpringContextTests {
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+    }
+
+    @Test
+    public void login_rootAndInvalidPassword() {
+        ResponseEntity<LoginResponse> response = login("root@gmail.com", "root");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("root@gmail.com", response.getBody().getEmail());
+        assertEquals(TOKEN_TYPE, response.getBody().getTokenType());
+        assertNotNull(response.getBody().getToken());
+
+        assertEquals(HttpStatus.UNAUTHORIZED, login("root@gmail.com", "invalid").getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, login("missing." + UUID.randomUUID() + "@gmail.com", "invalid").getStatusCode());
+    }
+
+    @Test
+    public void getUserById_notModifiedUntilEdited() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        UserRequest userRequest = new UserRequest("Rey", "Doe", "reactive.etag." + UUID.randomUUID() + "@gmail.com", "qwerty", null);
+        String userPath = String.format("/users/%s", createUser(userRequest).getId());
+
+        ResponseEntity<UserResponse> response = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), adminToken)), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String etag = response.getHeaders().getETag();
+        assertNotNull(etag);
+
+        HttpHeaders conditionalHeaders = withToken(jsonHeaders(), adminToken);
+        conditionalHeaders.setIfNoneMatch(etag);
+        ResponseEntity<UserResponse> notModifiedResponse = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(conditionalHeaders), UserResponse.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, notModifiedResponse.getStatusCode());
+        assertEquals(List.of(etag), notModifiedResponse.getHeaders().get(HttpHeaders.ETAG));
+        assertNull(notModifiedResponse.getBody());
+
+        ResponseEntity<String> roles = restTemplate.getForEntity("/users/roles", String.class);
+        HttpHeaders rolesHeaders = new HttpHeaders();
+        rolesHeaders.setIfNoneMatch(roles.getHeaders().getETag());
+        ResponseEntity<String> rolesNotModified = restTemplate.exchange("/users/roles", HttpMethod.GET, new HttpEntity<>(rolesHeaders), String.class);
+        assertEquals(HttpStatus.NOT_MODIFIED, rolesNotModified.getStatusCode());
+        assertEquals(List.of(roles.getHeaders().getETag()), rolesNotModified.getHeaders().get(HttpHeaders.ETAG));
+
+        userRequest.setFirstName("Reya");
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, withToken(jsonHeaders(), adminToken)), UserResponse.class).getStatusCode());
+        ResponseEntity<UserResponse> modifiedResponse = restTemplate.exchange(userPath, HttpMethod.GET, new HttpEntity<>(conditionalHeaders), UserResponse.class);
+        assertEquals(HttpStatus.OK, modifiedResponse.getStatusCode());
+        assertNotEquals(etag, modifiedResponse.getHeaders().getETag());
+        assertEquals("Reya", modifiedResponse.getBody().getFirstName());
+
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(withToken(jsonHeaders(), adminToken)), Void.class).getStatusCode());
+    }
+
+    @Test
+    public void getCurrentUser_tokenChecked() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+
+        ResponseEntity<CurrentUserResponse> response = restTemplate.exchange("/users/me", HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), adminToken)), CurrentUserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("root@gmail.com", response.getBody().getEmail());
+
+        String tampered = adminToken.substring(0, adminToken.length() - 2) + (adminToken.endsWith("AA") ? "BB" : "AA");
+        assertEquals(HttpStatus.UNAUTHORIZED, restTemplate.exchange("/users/me", HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), tampered)), CurrentUserResponse.class).getStatusCode());
+    }
+
+    @Test
+    public void editUserToAdmin_onlyByAdministrator() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        RoleResponse adminRole = Arrays.stream(restTemplate.getForObject("/users/roles", RoleResponse[].class))
+                .filter(role -> role.getName().equals(Role.ADMINISTRATOR))
+                .findFirst()
+                .orElseThrow();
+        String email = "reactive.edit." + UUID.randomUUID() + "@gmail.com";
+        UserRequest userRequest = new UserRequest("Ray", "Doe", email, "qwerty", null);
+        String userPath = String.format("/users/%s", createUser(userRequest).getId());
+        String userToken = login(email, "qwerty").getBody().getToken();
+        assertEquals(HttpStatus.FORBIDDEN, restTemplate.exchange("/users?cursor=0", HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), userToken)), String.class).getStatusCode());
+
+        userRequest.setRoles(Set.of(new RoleRequest(Long.parseLong(adminRole.getId()))));
+        ResponseEntity<UserResponse> selfPromotion = restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, withToken(jsonHeaders(), userToken)), UserResponse.class);
+        assertEquals(HttpStatus.FORBIDDEN, selfPromotion.getStatusCode());
+
+        ResponseEntity<UserResponse> promotion = restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, withToken(jsonHeaders(), adminToken)), UserResponse.class);
+        assertEquals(HttpStatus.OK, promotion.getStatusCode());
+        assertTrue(promotion.getBody().getRoles().stream().anyMatch(role -> role.getName().equals(Role.ADMINISTRATOR)));
+
+        // A fresh token carries the Administrator bit and passes the Administrator-only list
+        String promotedToken = login(email, "qwerty").getBody().getToken();
+        assertEquals(HttpStatus.OK, restTemplate.exchange("/users?cursor=0", HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), promotedToken)), String.class).getStatusCode());
+
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(withToken(jsonHeaders(), adminToken)), Void.class).getStatusCode());
+    }
+
+    private UserResponse createUser(UserRequest userRequest) {
+        ResponseEntity<UserResponse> response = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response.getBody();
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        return restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        headers.add(HttpHeaders.AUTHORIZATION, TOKEN_TYPE + " " + token);
+        return headers;
+    }
+
+}
@@ -2,11 +2,16 @@ package com.example.usermanagementwithredis.integrations;
 
 import com.example.usermanagementwithredis.dtos.*;
 import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.UserRepository;
+import com.example.usermanagementwithredis.services.RoleCatalog;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -23,6 +28,7 @@ import org.testng.annotations.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -31,6 +37,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -48,6 +55,15 @@ public class UserManagementControllerServerSideTests extends AbstractTestNGSprin
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleCatalog roleCatalog;
+
     private final ObjectMapper mapper = new ObjectMapper();
 
     private UserResponse userCreatedWithDefaultRole;
@@ -67,6 +83,10 @@ public class UserManagementControllerServerSideTests extends AbstractTestNGSprin
         registry.add("spring.redis.host", redisContainer::getHost);
         registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
         registry.add("spring.redis.password", () -> "");
+        // Keep the role catalog poller quiet while Redis commands are being counted
+        registry.add("roles.catalog.refresh-interval", () -> "3600000");
+        // The throttle stays on, with room for every root login of the test classes sharing the container
+        registry.add("security.login-throttle.email.capacity", () -> "1000");
     }
 
     @Test
@@ -88,6 +108,62 @@ public class UserManagementControllerServerSideTests extends AbstractTestNGSprin
         this.adminToken = loginResponse.getToken();
     }
 
+    @Test
+    public void loginRoot_singleUserRead() throws Exception {
+        LoginRequest loginRequest = new LoginRequest("root@gmail.com", "root");
+        // Loads the throttle script, so the measured login sends it as a single EVALSHA
+        mockMvc.perform(post("/users/login")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE)
+                        .content(mapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isOk());
+
+        resetRedisCommandStats();
+        assertTrue(userRepository.findByEmail(loginRequest.getEmail()).isPresent());
+        long singleLookupCommands = countRedisCommands();
+
+        resetRedisCommandStats();
+        mockMvc.perform(post("/users/login")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .accept(MediaType.APPLICATION_JSON_VALUE)
+                        .content(mapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").exists());
+        long loginCommands = countRedisCommands();
+        // commandstats also counts the calls made inside the throttle script, under their own names
+        long throttleScriptCommands = countRedisCommand("time") + countRedisCommand("hmget") + countRedisCommand("hset") + countRedisCommand("pexpire");
+
+        assertTrue(singleLookupCommands > 0);
+        assertEquals(1, countRedisCommand("evalsha"));
+        assertEquals(0, countRedisCommand("eval"));
+        assertEquals(1, countRedisCommand("time"));
+        // One user read plus one throttle script call
+        assertEquals(singleLookupCommands, loginCommands - 1 - throttleScriptCommands);
+    }
+
+    @Test
+    public void saveUser_singleRoundTrip() throws Exception {
+        User user = new User("Jack", "Doe", "jackdoe@gmail.com", "protected", Set.of(roleCatalog.getByName(Role.GUEST)));
+        userRepository.save(user);
+        assertNotNull(user.getId());
+
+        user.setEmail("jackdoe2@gmail.com");
+        resetRedisCommandStats();
+        userRepository.save(user);
+        // commandstats also counts the calls made inside the script, so check the write went through it alone
+        assertEquals(1, countRedisCommand("evalsha"));
+        assertEquals(0, countRedisCommand("hmset"));
+
+        assertTrue(userRepository.findByEmail("jackdoe2@gmail.com").isPresent());
+        assertFalse(userRepository.findByEmail("jackdoe@gmail.com").isPresent());
+        User saved = userRepository.findById(user.getId()).orElseThrow();
+        assertEquals(user.getFirstName(), saved.getFirstName());
+        assertEquals(1, saved.getRoles().size());
+        assertEquals(Role.GUEST, saved.getRoles().iterator().next().getName());
+
+        userRepository.delete(saved);
+    }
+
     @Test
     public void loginRoot_failByInvalidPassword() throws Exception {
         LoginRequest loginRequest = new LoginRequest("root@gmail.com", "invalid");
@@ -398,4 +474,37 @@ public class UserManagementControllerServerSideTests extends AbstractTestNGSprin
         this.userCreatedWithDefaultRolePassword = null;
     }
 
+    private void resetRedisCommandStats() {
+        try(RedisConnection connection = redisConnectionFactory.getConnection()) {
+            connection.serverCommands().resetConfigStats();
+        }
+    }
+
+    private long countRedisCommands() {
+        Properties commandStats = redisCommandStats();
+        Set<String> bookkeeping = Set.of("cmdstat_info", "cmdstat_config", "cmdstat_ping", "cmdstat_select", "cmdstat_hello", "cmdstat_client", "cmdstat_auth");
+        return commandStats.stringPropertyNames().stream()
+                .filter(name -> name.startsWith("cmdstat_") && !bookkeeping.contains(name))
+                .mapToLong(name -> countCalls(commandStats.getProperty(name)))
+                .sum();
+    }
+
+    private long countRedisCommand(String command) {
+        String stats = redisCommandStats().getProperty("cmdstat_" + command);
+        return stats == null ? 0 : countCalls(stats);
+    }
+
+    private Properties redisCommandStats() {
+        try(RedisConnection connection = redisConnectionFactory.getConnection()) {
+            return connection.serverCommands().info("commandstats");
+        }
+    }
+
+    private static long countCalls(String stats) {
+        return Arrays.stream(stats.split(","))
+                .filter(stat -> stat.startsWith("calls="))
+                .mapToLong(stat -> Long.parseLong(stat.substring("calls=".length())))
+                .sum();
+    }
+
 }
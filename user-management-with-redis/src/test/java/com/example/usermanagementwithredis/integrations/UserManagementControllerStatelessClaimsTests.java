@@ -0,0 +1,151 @@
+package com.example.usermanagementwithredis.integrations;
+
+import com.example.usermanagementwithredis.dtos.*;
+import com.example.usermanagementwithredis.entities.Role;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Runs with security.stateless-claims.enabled, where a token whose security version is current
+ * is trusted without loading the user.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Testcontainers
+public class UserManagementControllerStatelessClaimsTests extends AbstractTestNGSpringContextTests {
+
+    @Value("${security.token-type}")
+    private String TOKEN_TYPE;
+
+    @Container
+    public static final GenericContainer<?> redisContainer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    static {
+        redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.0.5"))
+                .withExposedPorts(6379)
+                .withReuse(true);
+        redisContainer.start();
+    }
+
+    @DynamicPropertySource
+    public static void setDatasourceProperties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.host", redisContainer::getHost);
+        registry.add("spring.redis.port", () -> redisContainer.getMappedPort(6379));
+        registry.add("spring.redis.password", () -> "");
+        registry.add("security.stateless-claims.enabled", () -> "true");
+    }
+
+    @Test
+    public void currentToken_servedFromClaims_untilEditedOrDeleted() {
+        String adminToken = login("root@gmail.com", "root").getBody().getToken();
+        RoleResponse adminRole = Arrays.stream(restTemplate.getForObject("/users/roles", RoleResponse[].class))
+                .filter(role -> role.getName().equals(Role.ADMINISTRATOR))
+                .findFirst()
+                .orElseThrow();
+
+        // The Redis container is reused across runs, so the user is new every time
+        String email = "claims." + UUID.randomUUID() + "@gmail.com";
+        UserRequest userRequest = new UserRequest("Clara", "Doe", email, "qwerty", null);
+        ResponseEntity<UserResponse> createResponse = restTemplate.exchange("/users", HttpMethod.POST, new HttpEntity<>(userRequest, jsonHeaders()), UserResponse.class);
+        assertEquals(HttpStatus.OK, createResponse.getStatusCode());
+        Long id = createResponse.getBody().getId();
+        String userPath = String.format("/users/%s", id);
+
+        // A current token is trusted as is
+        String token = login(email, "qwerty").getBody().getToken();
+        double fromToken = principals("token");
+        double fromRedis = principals("redis");
+        ResponseEntity<CurrentUserResponse> current = getCurrentUser(token);
+        assertEquals(HttpStatus.OK, current.getStatusCode());
+        assertEquals(Set.of(Role.GUEST), roleNames(current.getBody()));
+        assertTrue(principals("token") > fromToken);
+        assertEquals(fromRedis, principals("redis"));
+
+        // A role edit makes the token's claims stale, so the user is loaded and the new roles apply
+        userRequest.setRoles(Set.of(new RoleRequest(Long.parseLong(adminRole.getId()))));
+        ResponseEntity<UserResponse> roleEdit = restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, withToken(jsonHeaders(), adminToken)), UserResponse.class);
+        assertEquals(HttpStatus.OK, roleEdit.getStatusCode());
+        fromToken = principals("token");
+        ResponseEntity<CurrentUserResponse> afterRoleEdit = getCurrentUser(token);
+        assertEquals(HttpStatus.OK, afterRoleEdit.getStatusCode());
+        assertEquals(Set.of(Role.ADMINISTRATOR), roleNames(afterRoleEdit.getBody()));
+        assertEquals(fromToken, principals("token"));
+        assertTrue(principals("redis") > fromRedis);
+
+        // An email edit does too, and the old email no longer names a user
+        String tokenBeforeEmailEdit = login(email, "qwerty").getBody().getToken();
+        assertEquals(HttpStatus.OK, getCurrentUser(tokenBeforeEmailEdit).getStatusCode());
+        userRequest.setEmail("renamed." + email);
+        ResponseEntity<UserResponse> emailEdit = restTemplate.exchange(userPath, HttpMethod.PUT, new HttpEntity<>(userRequest, withToken(jsonHeaders(), adminToken)), UserResponse.class);
+        assertEquals(HttpStatus.OK, emailEdit.getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, getCurrentUser(tokenBeforeEmailEdit).getStatusCode());
+
+        // A deleted user's token is rejected, and the bumped version stays behind as a tombstone
+        String lastToken = login(userRequest.getEmail(), "qwerty").getBody().getToken();
+        assertEquals(HttpStatus.OK, getCurrentUser(lastToken).getStatusCode());
+        assertEquals(HttpStatus.OK, restTemplate.exchange(userPath, HttpMethod.DELETE, new HttpEntity<>(withToken(jsonHeaders(), adminToken)), Void.class).getStatusCode());
+        assertEquals(HttpStatus.UNAUTHORIZED, getCurrentUser(lastToken).getStatusCode());
+        assertNotNull(redisTemplate.opsForHash().get("users:security-versions", String.valueOf(id)));
+    }
+
+    private ResponseEntity<LoginResponse> login(String email, String password) {
+        ResponseEntity<LoginResponse> response = restTemplate.exchange("/users/login", HttpMethod.POST, new HttpEntity<>(new LoginRequest(email, password), jsonHeaders()), LoginResponse.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return response;
+    }
+
+    private ResponseEntity<CurrentUserResponse> getCurrentUser(String token) {
+        return restTemplate.exchange("/users/me", HttpMethod.GET, new HttpEntity<>(withToken(jsonHeaders(), token)), CurrentUserResponse.class);
+    }
+
+    private double principals(String source) {
+        return meterRegistry.get("security.principals").tag("source", source).counter().count();
+    }
+
+    private static Set<String> roleNames(CurrentUserResponse user) {
+        return user.getRoles().stream().map(RoleResponse::getName).collect(Collectors.toSet());
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        return headers;
+    }
+
+    private HttpHeaders withToken(HttpHeaders headers, String token) {
+        HttpHeaders authorized = new HttpHeaders();
+        authorized.addAll(headers);
+        authorized.add(HttpHeaders.AUTHORIZATION, String.format("%s %s", this.TOKEN_TYPE, token));
+        return authorized;
+    }
+
+}
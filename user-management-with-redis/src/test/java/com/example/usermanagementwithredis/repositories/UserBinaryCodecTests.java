@@ -0,0 +1,161 @@
+package com.example.usermanagementwithredis.repositories;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserBinaryCodecTests {
+
+    private final Role administrator = new Role(1L, Role.ADMINISTRATOR, 0);
+    private final Role guest = new Role(2L, Role.GUEST, 1);
+    private final Function<Long, Role> roleResolver = id -> id == 1L ? administrator : id == 2L ? guest : null;
+    private final LongFunction<Set<Role>> maskResolver = mask -> mask == 0b01 ? Set.of(administrator)
+            : mask == 0b10 ? Set.of(guest)
+            : mask == 0b11 ? Set.of(administrator, guest)
+            : mask == 0 ? Set.of() : null;
+
+    @Test
+    public void encode_rolesWithBits_writesMask() {
+        User user = new User("Jane", "Roe", "jane@gmail.com", "hash", Set.of(administrator, guest));
+
+        byte[] blob = UserBinaryCodec.encode(user);
+        User decoded = UserBinaryCodec.decode(blob, roleResolver, maskResolver);
+
+        assertEquals(UserBinaryCodec.VERSION, blob[0]);
+        assertEquals("Jane", decoded.getFirstName());
+        assertEquals("Roe", decoded.getLastName());
+        assertEquals(Set.of(administrator, guest), decoded.getRoles());
+        // Kept outside the blob
+        assertNull(decoded.getEmail());
+        assertNull(decoded.getProtectedPassword());
+    }
+
+    @Test
+    public void encode_nullNamesAndRoles_decodedAsNull() {
+        User decoded = UserBinaryCodec.decode(UserBinaryCodec.encode(new User(null, null, null, null, null)), roleResolver, maskResolver);
+
+        assertNull(decoded.getFirstName());
+        assertNull(decoded.getLastName());
+        assertNull(decoded.getRoles());
+    }
+
+    @Test
+    public void encode_emptyNamesAndRoles_keptEmpty() {
+        User decoded = UserBinaryCodec.decode(UserBinaryCodec.encode(new User("", "", null, null, Set.of())), roleResolver, maskResolver);
+
+        assertEquals("", decoded.getFirstName());
+        assertEquals("", decoded.getLastName());
+        assertEquals(Set.of(), decoded.getRoles());
+    }
+
+    @Test
+    public void encode_roleWithoutBit_writesRoleIds() {
+        Role unassigned = new Role(3L, "Auditor");
+        User user = new User("Jane", "Roe", null, null, Set.of(guest, unassigned));
+
+        byte[] blob = UserBinaryCodec.encode(user);
+        User decoded = UserBinaryCodec.decode(blob, id -> id == 3L ? unassigned : roleResolver.apply(id), maskResolver);
+
+        assertEquals(UserBinaryCodec.VERSION_ROLE_IDS, blob[0]);
+        assertEquals("Jane", decoded.getFirstName());
+        assertEquals(Set.of(guest, unassigned), decoded.getRoles());
+    }
+
+    @Test
+    public void decode_unknownRoleId_keepsRoleWithoutName() {
+        Role unknown = new Role(9L, "Removed");
+        byte[] blob = UserBinaryCodec.encode(new User("Jane", "Roe", null, null, Set.of(unknown)));
+
+        User decoded = UserBinaryCodec.decode(blob, roleResolver, maskResolver);
+
+        assertEquals(1, decoded.getRoles().size());
+        Role role = decoded.getRoles().iterator().next();
+        assertEquals(9L, role.getId());
+        assertNull(role.getName());
+    }
+
+    @Test
+    public void decode_unknownMaskBit_fails() {
+        byte[] blob = UserBinaryCodec.encode(new User("Jane", "Roe", null, null, Set.of(new Role(4L, "Auditor", 2))));
+
+        assertThrows(IllegalStateException.class, () -> UserBinaryCodec.decode(blob, roleResolver, maskResolver));
+    }
+
+    @Test
+    public void decode_unknownVersion_fails() {
+        byte[] blob = UserBinaryCodec.encode(new User("Jane", "Roe", null, null, null));
+        blob[0] = 3;
+
+        assertThrows(IllegalArgumentException.class, () -> UserBinaryCodec.decode(blob, roleResolver, maskResolver));
+    }
+
+    @Test
+    public void userReader_readsAllLayouts() {
+        UserStorageConverters.UserReader reader = new UserStorageConverters.UserReader(roleResolver, maskResolver);
+        User user = new User(5L, "Jane", null, "jane@gmail.com", "hash", Set.of(guest));
+
+        // Field layout written by the mapping converter before role masks
+        Map<String, byte[]> fields = new HashMap<>();
+        fields.put("_class", bytes(User.class.getName()));
+        fields.put("id", bytes("5"));
+        fields.put("firstName", bytes("Jane"));
+        fields.put("email", bytes("jane@gmail.com"));
+        fields.put("protectedPassword", bytes("hash"));
+        fields.put("roles.[0]", bytes("roles:2"));
+        User fromReferences = reader.convert(fields);
+
+        User fromFields = reader.convert(new UserStorageConverters.FieldsUserWriter().convert(user));
+        User fromBlob = reader.convert(new UserStorageConverters.BinaryUserWriter().convert(user));
+
+        for(User read : new User[]{fromReferences, fromFields, fromBlob}) {
+            assertEquals("Jane", read.getFirstName());
+            assertNull(read.getLastName());
+            assertEquals("jane@gmail.com", read.getEmail());
+            assertEquals("hash", read.getProtectedPassword());
+            assertEquals(Set.of(guest), read.getRoles());
+        }
+        assertEquals(5L, fromReferences.getId());
+        assertEquals(5L, fromFields.getId());
+    }
+
+    @Test
+    public void fieldsUserWriter_rolesWithBits_writesMaskOnly() {
+        Map<String, byte[]> fields = new UserStorageConverters.FieldsUserWriter().convert(new User(5L, "Jane", "Roe", "jane@gmail.com", "hash", Set.of(administrator, guest)));
+
+        assertEquals(Set.of("id", "firstName", "lastName", "email", "protectedPassword", "roleMask"), fields.keySet());
+        assertEquals("3", new String(fields.get("roleMask"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void fieldsUserWriter_roleWithoutBit_writesReferences() {
+        Role unassigned = new Role(3L, "Auditor");
+        Map<String, byte[]> fields = new UserStorageConverters.FieldsUserWriter().convert(new User(5L, "Jane", null, null, null, Set.of(unassigned)));
+
+        assertEquals(Set.of("id", "firstName", "roles.[0]"), fields.keySet());
+        User read = new UserStorageConverters.UserReader(id -> id == 3L ? unassigned : roleResolver.apply(id), maskResolver).convert(fields);
+        assertEquals(Set.of(unassigned), read.getRoles());
+    }
+
+    @Test
+    public void userReader_unknownMaskBitInFields_fails() {
+        Map<String, byte[]> fields = new HashMap<>();
+        fields.put("id", bytes("5"));
+        fields.put("roleMask", bytes("4"));
+
+        assertThrows(IllegalStateException.class, () -> new UserStorageConverters.UserReader(roleResolver, maskResolver).convert(fields));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
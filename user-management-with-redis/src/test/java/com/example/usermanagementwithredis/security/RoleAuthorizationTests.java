@@ -0,0 +1,131 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.controllers.UserManagementController;
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import com.example.usermanagementwithredis.repositories.RoleRepository;
+import com.example.usermanagementwithredis.services.RoleCatalog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.util.SimpleMethodInvocation;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * The role mask of an issued token, read back by the verifier, decides the Administrator-only
+ * @PreAuthorize expression of GET /users. The catalog is loaded from in-memory stand-ins.
+ */
+public class RoleAuthorizationTests {
+
+    private final Role administrator = new Role(4242L, Role.ADMINISTRATOR, 0);
+    private final Role guest = new Role(4343L, Role.GUEST, 1);
+
+    private List<Role> roles;
+    private RoleCatalog roleCatalog;
+    private RoleAuthorization roleAuthorization;
+    private TokenVerifier tokenVerifier;
+    private TokenIssuer tokenIssuer;
+    private DefaultMethodSecurityExpressionHandler expressionHandler;
+
+    @BeforeMethod
+    public void setup() {
+        roles = List.of(administrator, guest);
+        RoleRepository roleRepository = (RoleRepository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RoleRepository.class},
+                (proxy, method, args) -> "findAll".equals(method.getName()) ? roles : null);
+        ValueOperations<?, ?> versions = (ValueOperations<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ValueOperations.class},
+                (proxy, method, args) -> "get".equals(method.getName()) ? "1" : null);
+        StringRedisTemplate redisTemplate = new StringRedisTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ValueOperations<String, String> opsForValue() {
+                return (ValueOperations<String, String>) versions;
+            }
+        };
+        roleCatalog = new RoleCatalog(roleRepository, redisTemplate, "roles:catalog:version");
+        roleCatalog.refresh();
+        roleAuthorization = new RoleAuthorization(roleCatalog);
+
+        tokenVerifier = new TokenVerifier("123456", "--", "authorities", 100, new SimpleMeterRegistry());
+        tokenIssuer = new TokenIssuer(tokenVerifier, "--", "authorities", 10000000);
+
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("roleAuthorization", roleAuthorization);
+        expressionHandler = new DefaultMethodSecurityExpressionHandler();
+        expressionHandler.setApplicationContext(context);
+    }
+
+    @Test
+    public void administratorToken_maskRoundTrips_allowed() {
+        User user = new User(1L, "Root", "Admin", "root@gmail.com", null, Set.of(administrator, guest));
+
+        Authentication authentication = authenticate(user);
+
+        assertEquals(0b11L, ((RoleMaskAuthentication) authentication).getRoleMask());
+        assertTrue(roleAuthorization.isAdministrator(authentication));
+        assertTrue(canGetAllUsers(authentication));
+    }
+
+    @Test
+    public void guestToken_maskRoundTrips_denied() {
+        User user = new User(2L, "John", "Doe", "johndoe@gmail.com", null, Set.of(guest));
+
+        Authentication authentication = authenticate(user);
+
+        assertEquals(0b10L, ((RoleMaskAuthentication) authentication).getRoleMask());
+        assertFalse(roleAuthorization.isAdministrator(authentication));
+        assertFalse(canGetAllUsers(authentication));
+    }
+
+    @Test
+    public void administratorWithoutBit_noMaskAllowed() {
+        roles = List.of(new Role(4242L, Role.ADMINISTRATOR), guest);
+        roleCatalog.refresh();
+
+        assertFalse(roleCatalog.isAdministrator(-1L));
+    }
+
+    @Test
+    public void authenticationWithoutMask_checkedByAuthorityName() {
+        Authentication administratorAuthentication = new UsernamePasswordAuthenticationToken("root@gmail.com", null, List.of(new SimpleGrantedAuthority(Role.ADMINISTRATOR)));
+        Authentication guestAuthentication = new UsernamePasswordAuthenticationToken("johndoe@gmail.com", null, List.of(new SimpleGrantedAuthority(Role.GUEST)));
+
+        assertTrue(canGetAllUsers(administratorAuthentication));
+        assertFalse(canGetAllUsers(guestAuthentication));
+    }
+
+    // The way the authorization filter builds the authentication of a token
+    private Authentication authenticate(User user) {
+        String token = tokenIssuer.issue(user, roleCatalog.getMask(user.getRoles()), 0);
+        VerifiedToken verifiedToken = tokenVerifier.verify(token);
+        Long roleMask = verifiedToken.getRoleMask();
+        CachedPrincipal principal = new CachedPrincipal(user, roleCatalog.getAuthorities(roleMask), roleMask, verifiedToken.getIssuedAt());
+        return new RoleMaskAuthentication(principal, verifiedToken);
+    }
+
+    private boolean canGetAllUsers(Authentication authentication) {
+        Method method = Arrays.stream(UserManagementController.class.getMethods())
+                .filter(candidate -> candidate.getName().equals("getAllUsers"))
+                .findFirst()
+                .orElseThrow();
+        EvaluationContext context = expressionHandler.createEvaluationContext(authentication, new SimpleMethodInvocation(new Object(), method));
+        return ExpressionUtils.evaluateAsBoolean(expressionHandler.getExpressionParser().parseExpression(method.getAnnotation(PreAuthorize.class).value()), context);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.example.usermanagementwithredis.security;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.entities.User;
+import io.jsonwebtoken.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * A token whose signature was checked once is served from the verified-token cache until it expires,
+ * and with security.token-cache.maximum-size at 0 every token has its signature checked.
+ */
+public class TokenVerifierTests {
+
+    private final User user = new User(1L, "Root", "Admin", "root@gmail.com", null, Set.of(new Role(4242L, Role.ADMINISTRATOR, 0)));
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeMethod
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void sameToken_servedFromCache() {
+        TokenVerifier tokenVerifier = new TokenVerifier("123456", "--", "authorities", 100, meterRegistry);
+        String token = new TokenIssuer(tokenVerifier, "--", "authorities", 10000000).issue(user, 1L, 0);
+
+        VerifiedToken first = tokenVerifier.verify(token);
+        VerifiedToken second = tokenVerifier.verify(token);
+
+        assertEquals(1L, first.getId());
+        assertEquals("root@gmail.com", first.getEmail());
+        assertEquals(1L, first.getRoleMask());
+        assertSame(first, second);
+        assertEquals(1, tokenVerifier.getMissCount());
+        assertEquals(1, tokenVerifier.getHitCount());
+        assertEquals(1, verifications("signature"));
+        assertEquals(1, verifications("cached"));
+    }
+
+    @Test
+    public void cacheDisabled_signatureCheckedEveryTime() {
+        TokenVerifier tokenVerifier = new TokenVerifier("123456", "--", "authorities", 0, meterRegistry);
+        String token = new TokenIssuer(tokenVerifier, "--", "authorities", 10000000).issue(user, 1L, 0);
+
+        VerifiedToken first = tokenVerifier.verify(token);
+        VerifiedToken second = tokenVerifier.verify(token);
+
+        assertEquals(first.getTokenId(), second.getTokenId());
+        assertNotSame(first, second);
+        assertEquals(0, tokenVerifier.getHitCount());
+        assertEquals(0, tokenVerifier.getMissCount());
+        assertEquals(2, verifications("signature"));
+        assertEquals(0, verifications("cached"));
+    }
+
+    @Test
+    public void tamperedToken_rejectedAndNotCached() {
+        TokenVerifier tokenVerifier = new TokenVerifier("123456", "--", "authorities", 100, meterRegistry);
+        String token = new TokenIssuer(tokenVerifier, "--", "authorities", 10000000).issue(user, 1L, 0);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThrows(SignatureException.class, () -> tokenVerifier.verify(tampered));
+        assertThrows(SignatureException.class, () -> tokenVerifier.verify(tampered));
+
+        assertEquals(0, tokenVerifier.getHitCount());
+        assertEquals(2, verifications("rejected"));
+    }
+
+    private long verifications(String result) {
+        return meterRegistry.get("token.verification").tag("result", result).timer().count();
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.example.usermanagementwithredis.services;
+
+import com.example.usermanagementwithredis.entities.Role;
+import com.example.usermanagementwithredis.repositories.RoleRepository;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * The catalog keeps serving its snapshot until the version key changes, then swaps in the roles
+ * loaded at the new version. Roles and the version key come from in-memory stand-ins.
+ */
+public class RoleCatalogTests {
+
+    private final Role administrator = new Role(4242L, Role.ADMINISTRATOR, 0);
+    private final Role guest = new Role(4343L, Role.GUEST, 1);
+
+    private List<Role> roles;
+    private long version;
+    private volatile int loads;
+    private CountDownLatch loading;
+    private CountDownLatch release;
+    private RoleCatalog roleCatalog;
+
+    @BeforeMethod
+    public void setup() {
+        roles = List.of(administrator, guest);
+        version = 1;
+        loads = 0;
+        loading = null;
+        release = null;
+        RoleRepository roleRepository = (RoleRepository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RoleRepository.class},
+                (proxy, method, args) -> {
+                    if("findAll".equals(method.getName())) {
+                        loads++;
+                        if(release != null) {
+                            loading.countDown();
+                            release.await(10, TimeUnit.SECONDS);
+                        }
+                        return roles;
+                    }
+                    return null;
+                });
+        ValueOperations<?, ?> versions = (ValueOperations<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ValueOperations.class},
+                (proxy, method, args) -> {
+                    if("get".equals(method.getName())) {
+                        return String.valueOf(version);
+                    } else if("increment".equals(method.getName())) {
+                        return ++version;
+                    }
+                    return null;
+                });
+        StringRedisTemplate redisTemplate = new StringRedisTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ValueOperations<String, String> opsForValue() {
+                return (ValueOperations<String, String>) versions;
+            }
+        };
+        roleCatalog = new RoleCatalog(roleRepository, redisTemplate, "roles:catalog:version");
+        roleCatalog.refresh();
+    }
+
+    @Test
+    public void sameVersion_snapshotKept() {
+        Role auditor = new Role(4444L, "Auditor", 2);
+        roles = List.of(administrator, guest, auditor);
+
+        roleCatalog.refreshIfChanged();
+
+        assertEquals(1, loads);
+        assertEquals("1", roleCatalog.getVersion());
+        assertNull(roleCatalog.getByName("Auditor"));
+        assertNull(roleCatalog.getMask(Set.of(auditor)));
+    }
+
+    @Test
+    public void newVersion_snapshotSwapped() {
+        Role auditor = new Role(4444L, "Auditor", 2);
+        roles = List.of(administrator, guest, auditor);
+        version = 2;
+
+        roleCatalog.refreshIfChanged();
+
+        assertEquals(2, loads);
+        assertEquals("2", roleCatalog.getVersion());
+        assertEquals(auditor, roleCatalog.getById(4444L));
+        assertEquals(0b110L, roleCatalog.getMask(Set.of(guest, auditor)));
+        assertEquals(Set.of(guest, auditor), roleCatalog.getRoles(0b110L));
+        assertFalse(roleCatalog.isAdministrator(0b110L));
+        assertTrue(roleCatalog.isAdministrator(0b111L));
+    }
+
+    @Test
+    public void changeFoundDuringLoad_pollLeavesItToTheLoad() throws Exception {
+        loading = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        version = 2;
+        CompletableFuture<Void> refresh = CompletableFuture.runAsync(roleCatalog::refresh);
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+        // Returns without waiting for the lock the load holds
+        roleCatalog.refreshIfChanged();
+        assertEquals(2, loads);
+
+        release.countDown();
+        refresh.get(10, TimeUnit.SECONDS);
+        assertEquals("2", roleCatalog.getVersion());
+        roleCatalog.refreshIfChanged();
+        assertEquals(2, loads);
+    }
+
+    @Test
+    public void bumpVersion_reloadsAtNewVersion() {
+        roles = List.of(new Role(4242L, Role.ADMINISTRATOR, 3), guest);
+
+        roleCatalog.bumpVersion();
+
+        assertEquals("2", roleCatalog.getVersion());
+        assertEquals(0b1000L, roleCatalog.getMask(Set.of(administrator)));
+        // The bit the role had before belongs to no role of the new snapshot
+        assertNull(roleCatalog.getRoles(0b1L));
+        assertFalse(roleCatalog.isAdministrator(0b1L));
+        assertTrue(roleCatalog.isAdministrator(0b1000L));
+    }
+
+}